@@ -32,12 +32,15 @@ import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
+import android.widget.ProgressBar;
 
 import com.barbedo.dwall.R;
 import com.barbedo.dwall.data.DWallApplication;
 import com.barbedo.dwall.data.Wallpaper;
 import com.barbedo.dwall.data.WallpaperData;
+import com.barbedo.dwall.utils.ImageLoader;
 import com.barbedo.dwall.utils.WallpaperHelper;
+import com.barbedo.dwall.utils.WallpaperImporter;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -55,15 +58,15 @@ import java.util.List;
  *
  * @author Ricardo Barbedo
  */
-public class DefaultActivity extends AppCompatActivity {
+public class DefaultActivity extends AppCompatActivity implements WallpaperImporter.Listener {
 
     private final String TAG = "DefaultActivity";
 
     private static final int SELECT_PICTURE = 100;
-    private static final int THUMB_WIDTH = 216;
-    private static final int THUMB_HEIGHT = 384;
 
     private ImageView preview;
+    private ProgressBar importProgress;
+    private WallpaperImporter.Handle importHandle;
     private Button okButton;
 
     @Override
@@ -73,10 +76,10 @@ public class DefaultActivity extends AppCompatActivity {
 
         preview = (ImageView) findViewById(R.id.preview_default);
         okButton = (Button) findViewById(R.id.ok_default_button);
+        importProgress = (ProgressBar) findViewById(R.id.import_progress_default);
 
         if (Arrays.asList(fileList()).contains("default")) {
-            preview.setImageDrawable(Drawable.
-                    createFromPath(getFileStreamPath("default_th").getAbsolutePath()));
+            setPreview("default");
         }
     }
 
@@ -103,9 +106,7 @@ public class DefaultActivity extends AppCompatActivity {
         // Sets the default wallpaper if there is no active wallpaper
         DWallApplication application = (DWallApplication) getApplication();
         WallpaperData wallpaperData = application.getWallpaperData();
-        List<Wallpaper> activeList = wallpaperData.getActiveWallpaperList(this);
-
-        WallpaperHelper.setOrIgnoreWallpaper(this, activeList);
+        WallpaperHelper.setOrIgnoreWallpaper(this, wallpaperData.resolve(this));
 
         Intent intent = new Intent(this, ListActivity.class);
         intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);  // Clears stack
@@ -124,26 +125,104 @@ public class DefaultActivity extends AppCompatActivity {
 
             String filename = "default";
 
-            // Delete files from the previous default
-            if (deleteFile(filename) &&
-                    deleteFile(filename + "_th")) {
-                Log.d(TAG, "Files deleted");
-            } else {
-                Log.d(TAG, "No file found");
+            // Stops an import that is still running, its files are deleted
+            if (importHandle != null) {
+                importHandle.cancel();
             }
 
+            // Delete files from the previous default
+            WallpaperHelper.deleteWallpaper(this, new Wallpaper(filename));
+
             // Retrieves URI
             Uri uri = data.getData();
 
-            // Copies to internal data
-            WallpaperHelper.copyWallpaperToStorage(this, uri, filename);
+            // Copies to internal data, the button waits for the import to complete
+            okButton.setEnabled(false);
+            importProgress.setIndeterminate(false);
+            importProgress.setProgress(0);
+            importProgress.setVisibility(View.VISIBLE);
+            importHandle = WallpaperImporter.importWallpaper(this, uri, filename, this);
+        }
+    }
+
+    /**
+     * Import callback with its progress.
+     * Method of the implemented interface.
+     *
+     * @param percent Progress of the import, or -1 if it is not known.
+     */
+    @Override
+    public void onProgress(int percent) {
+        importProgress.setIndeterminate(percent < 0);
+        importProgress.setProgress(Math.max(percent, 0));
+    }
+
+    /**
+     * Import callback for when the thumbnail can be displayed.
+     * Method of the implemented interface.
+     *
+     * @param filename Name of the imported file.
+     */
+    @Override
+    public void onThumbnailReady(String filename) {
+        setPreview(filename);
+    }
+
+    /**
+     * Displays the thumbnail sized for this screen.
+     *
+     * @param filename Name of the wallpaper.
+     */
+    private void setPreview(String filename) {
+        ImageLoader.getInstance(this).load(preview, filename, WallpaperHelper.Thumbnail.DEFAULT);
+    }
+
+    /**
+     * Import callback for when the files are on the disk.
+     * Method of the implemented interface.
+     *
+     * @param filename Name of the imported file.
+     * @param result   Hash and bounds of the image.
+     */
+    @Override
+    public void onComplete(String filename, WallpaperHelper.ImportResult result) {
+        importHandle = null;
+        importProgress.setVisibility(View.GONE);
+        WallpaperHelper.setDefaultContentHash(this, result.getContentHash());
 
-            // Displays thumbnail
-            preview.setImageDrawable(Drawable.
-                    createFromPath(getFileStreamPath(filename + "_th").getAbsolutePath()));
+        // Enable the button
+        okButton.setEnabled(true);
+    }
 
-            // Enable the button
-            okButton.setEnabled(true);
+    /**
+     * Import callback for when the image could not be copied.
+     * Method of the implemented interface.
+     *
+     * @param filename Name of the file.
+     */
+    @Override
+    public void onFailed(String filename) {
+        importHandle = null;
+        importProgress.setVisibility(View.GONE);
+        ImageLoader.getInstance(this).cancel(preview);
+        preview.setImageResource(R.drawable.blank);
+        WallpaperHelper.setDefaultContentHash(this, null);
+
+        // The previous default is already deleted, another image must be selected
+        okButton.setEnabled(false);
+        Snackbar.make(preview, "Could not import the image.", Snackbar.LENGTH_SHORT)
+                .show();
+    }
+
+    /**
+     * Stops the import if the activity is closed before it completes.
+     */
+    @Override
+    protected void onDestroy() {
+        if (importHandle != null) {
+            importHandle.cancel();
         }
+        ImageLoader.getInstance(this).cancel(preview);
+        super.onDestroy();
     }
 }
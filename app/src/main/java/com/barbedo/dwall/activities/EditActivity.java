@@ -34,6 +34,7 @@ import android.widget.AdapterView;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageView;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import com.barbedo.dwall.R;
@@ -44,8 +45,10 @@ import com.barbedo.dwall.data.Wallpaper;
 import com.barbedo.dwall.data.WallpaperData;
 import com.barbedo.dwall.fragments.TimePickerFragment;
 import com.barbedo.dwall.fragments.WifiFragment;
-import com.barbedo.dwall.services.TimeService;
+import com.barbedo.dwall.services.TriggerEngine;
+import com.barbedo.dwall.utils.ImageLoader;
 import com.barbedo.dwall.utils.WallpaperHelper;
+import com.barbedo.dwall.utils.WallpaperImporter;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -68,7 +71,8 @@ public class EditActivity extends AppCompatActivity
         implements TimePickerFragment.OnTimeSetListener,
                     AdapterView.OnItemSelectedListener,
                     View.OnTouchListener,
-                    WifiFragment.OnWifiSetListener {
+                    WifiFragment.OnWifiSetListener,
+                    WallpaperImporter.Listener {
 
     private final String TAG = "EditActivity";
 
@@ -76,8 +80,6 @@ public class EditActivity extends AppCompatActivity
     public static final int START_TIME_PICKER = 1;
     public static final int END_TIME_PICKER = 2;
     private final int DEFAULT_POSITION = 0;
-    private static final int THUMB_WIDTH = 108;
-    private static final int THUMB_HEIGHT = 192;
     private static final int SELECT_PICTURE = 100;
 
     private String selectedImagePath;
@@ -90,6 +92,8 @@ public class EditActivity extends AppCompatActivity
     private Wallpaper wallpaper;
     private List<Wallpaper> wallpaperList;
     private ImageView preview;
+    private ProgressBar importProgress;
+    private WallpaperImporter.Handle importHandle;
     private Button okButton;
     private EditText nameEdit;
     private CustomSpinner spinner;
@@ -106,6 +110,7 @@ public class EditActivity extends AppCompatActivity
         setContentView(R.layout.activity_edit);
 
         preview = (ImageView) findViewById(R.id.preview);
+        importProgress = (ProgressBar) findViewById(R.id.import_progress);
         okButton = (Button) findViewById(R.id.ok_button);
         okButton.setEnabled(false);
         nameEdit = (EditText) findViewById(R.id.name_edit);
@@ -138,12 +143,11 @@ public class EditActivity extends AppCompatActivity
             Wallpaper lastWallpaper = wallpaperList.get(position);
 
             nameEdit.setText(lastWallpaper.getName());
-            preview.setImageDrawable(Drawable.
-                    createFromPath(getFileStreamPath(lastWallpaper.
-                            getFilename() + "_th").getAbsolutePath()));
+            setPreview(lastWallpaper.getFilename());
             wallpaper.setFilename(lastWallpaper.getFilename());
             wallpaper.setInfo(lastWallpaper.getInfo());
             wallpaper.setMode(lastWallpaper.getMode());
+            wallpaper.setContentHash(lastWallpaper.getContentHash());
             infoText.setText(WallpaperHelper.getReadableInfo(wallpaper));
 
             switch (lastWallpaper.getMode()) {
@@ -186,18 +190,8 @@ public class EditActivity extends AppCompatActivity
 
             Log.d(TAG, "Wallpaper saved: " + wallpaper.toString());
 
-            // Sets the wallpaper if its on the top of the priority list
-            List<Wallpaper> activeList = wallpaperData.getActiveWallpaperList(this);
-            WallpaperHelper.setOrIgnoreWallpaper(this, activeList);
-
-            // Starts the TimeService to set the alarm
-            if (wallpaper.getMode().equals("Time")) {
-                Intent serviceIntent = new Intent(this, TimeService.class);
-                serviceIntent.setAction(TimeService.ACTION_SET_ALARM);
-                serviceIntent.putExtra(TimeService.EXTRA_INFO, wallpaper.getInfo());
-                serviceIntent.putExtra(TimeService.EXTRA_FILENAME, wallpaper.getFilename());
-                startService(serviceIntent);
-            }
+            // Sets the wallpaper if its on the top of the priority list and rearms the alarm
+            TriggerEngine.getInstance(this).submit(TriggerEngine.Trigger.RULES_EDITED);
 
             // Returns to the list activity
             Intent intent = new Intent(this, ListActivity.class);
@@ -230,6 +224,11 @@ public class EditActivity extends AppCompatActivity
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (resultCode == RESULT_OK && requestCode == SELECT_PICTURE) {
 
+            // Stops an import that is still running, its files are deleted
+            if (importHandle != null) {
+                importHandle.cancel();
+            }
+
             // Delete files from last selection
             WallpaperHelper.deleteWallpaper(getApplicationContext(), wallpaper);
 
@@ -240,21 +239,82 @@ public class EditActivity extends AppCompatActivity
             Long tsLong = System.currentTimeMillis() / 1000;
             String filename = tsLong.toString();
 
-            // Copies to the internal storage
-//            new WallpaperHelper.CopyWallpaperToStorage().execute(this, uri, filename);
-            WallpaperHelper.copyWallpaperToStorage(this, uri, filename);
+            // Copies to the internal storage, the button waits for the import to complete
+            okButton.setEnabled(false);
+            importProgress.setIndeterminate(false);
+            importProgress.setProgress(0);
+            importProgress.setVisibility(View.VISIBLE);
+            importHandle = WallpaperImporter.importWallpaper(this, uri, filename, this);
+        }
+    }
 
-            // Displays thumbnail
-            preview.setImageDrawable(Drawable.
-                    createFromPath(getFileStreamPath(filename + "_th").getAbsolutePath()));
+    /**
+     * Import callback with its progress.
+     * Method of the implemented interface.
+     *
+     * @param percent Progress of the import, or -1 if it is not known.
+     */
+    @Override
+    public void onProgress(int percent) {
+        importProgress.setIndeterminate(percent < 0);
+        importProgress.setProgress(Math.max(percent, 0));
+    }
 
-            // Saves the filename reference
-            wallpaper.setFilename(filename);
-            Log.d(TAG, "Wallpaper filename: " + filename);
+    /**
+     * Import callback for when the thumbnail can be displayed.
+     * Method of the implemented interface.
+     *
+     * @param filename Name of the imported file.
+     */
+    @Override
+    public void onThumbnailReady(String filename) {
+        setPreview(filename);
+    }
 
-            // Enable the button
-            okButton.setEnabled(true);
-        }
+    /**
+     * Displays the thumbnail sized for this screen.
+     *
+     * @param filename Name of the wallpaper.
+     */
+    private void setPreview(String filename) {
+        ImageLoader.getInstance(this).load(preview, filename, WallpaperHelper.Thumbnail.EDIT);
+    }
+
+    /**
+     * Import callback for when the files are on the disk.
+     * Method of the implemented interface.
+     *
+     * @param filename Name of the imported file.
+     * @param result   Hash and bounds of the image.
+     */
+    @Override
+    public void onComplete(String filename, WallpaperHelper.ImportResult result) {
+        importHandle = null;
+        importProgress.setVisibility(View.GONE);
+
+        // Saves the filename reference
+        wallpaper.setFilename(filename);
+        wallpaper.setContentHash(result.getContentHash());
+        Log.d(TAG, "Wallpaper filename: " + filename);
+
+        // Enable the button
+        okButton.setEnabled(true);
+    }
+
+    /**
+     * Import callback for when the image could not be copied.
+     * Method of the implemented interface.
+     *
+     * @param filename Name of the file.
+     */
+    @Override
+    public void onFailed(String filename) {
+        importHandle = null;
+        importProgress.setVisibility(View.GONE);
+        ImageLoader.getInstance(this).cancel(preview);
+        preview.setImageResource(R.drawable.blank);
+        Snackbar.make(preview, "Could not import the image.", Snackbar.LENGTH_SHORT)
+                .show();
     }
 
     /**
@@ -361,6 +421,12 @@ public class EditActivity extends AppCompatActivity
     @Override
     public void onBackPressed() {
 
+        // Stops the import, its files are deleted by the importer
+        if (importHandle != null) {
+            importHandle.cancel();
+            importHandle = null;
+        }
+
         // Delete wallpaper if it was selected before going back
         // If the the user is editing an already saved wallpaper, it is not deleted
         if (wallpaperList.size() > position) {
@@ -375,4 +441,16 @@ public class EditActivity extends AppCompatActivity
             super.onBackPressed();
         }
     }
+
+    /**
+     * Stops the import if the activity is closed before it completes.
+     */
+    @Override
+    protected void onDestroy() {
+        if (importHandle != null) {
+            importHandle.cancel();
+        }
+        ImageLoader.getInstance(this).cancel(preview);
+        super.onDestroy();
+    }
 }
@@ -100,9 +100,6 @@ public class ListActivity extends AppCompatActivity {
                     // TODO: Launch the DefaultActivity
                     Snackbar.make(view, "Please, set a default wallpaper.",
                             Snackbar.LENGTH_LONG).show();
-                } else if (wallpaperList.size() >= 5) {
-                    Snackbar.make(view, "Maximum number of wallpapers reached.",
-                            Snackbar.LENGTH_LONG).show();
                 } else {
                     Intent intent = new Intent(ListActivity.this, EditActivity.class);
                     intent.putExtra(EXTRA_POSITION, wallpaperList.size());
@@ -38,7 +38,8 @@ import com.barbedo.dwall.activities.EditActivity;
 import com.barbedo.dwall.activities.ListActivity;
 import com.barbedo.dwall.data.Wallpaper;
 import com.barbedo.dwall.data.WallpaperData;
-import com.barbedo.dwall.services.TimeService;
+import com.barbedo.dwall.services.TriggerEngine;
+import com.barbedo.dwall.utils.ImageLoader;
 import com.barbedo.dwall.utils.WallpaperHelper;
 
 import java.io.File;
@@ -128,6 +129,18 @@ public class RecyclerViewAdapter
         return new WallpaperViewHolder(v);
     }
 
+    /**
+     * Called when a ViewHolder is recycled.
+     * Its thumbnail is not needed anymore, so the pending load is dropped.
+     *
+     * @param wallpaperViewHolder Recycled ViewHolder.
+     */
+    @Override
+    public void onViewRecycled(WallpaperViewHolder wallpaperViewHolder) {
+        ImageLoader.getInstance(context).cancel(wallpaperViewHolder.thumb);
+        super.onViewRecycled(wallpaperViewHolder);
+    }
+
     /**
      * Called when the adapter is attached to the RecyclerView.
      *
@@ -151,11 +164,10 @@ public class RecyclerViewAdapter
         wallpaperViewHolder.mode.setText(wallpaperList.get(i).getMode());
         wallpaperViewHolder.info.setText(wallpaperList.get(i).getInfo());
 
-        Context context = wallpaperViewHolder.thumb.getContext();
+        // Bound from the cache when the card was displayed before
         String filename = wallpaperList.get(i).getFilename();
-
-        wallpaperViewHolder.thumb.setImageDrawable(Drawable.createFromPath(context.
-                getFileStreamPath(filename + "_th").getAbsolutePath()));
+        ImageLoader.getInstance(context).load(wallpaperViewHolder.thumb, filename,
+                WallpaperHelper.Thumbnail.LIST);
 
 
         wallpaperViewHolder.editButton.setOnClickListener(new View.OnClickListener() {
@@ -196,8 +208,7 @@ public class RecyclerViewAdapter
         wallpaperData.clearAndInsertWallpaperList(wallpaperList);
 
         // Sets wallpaper if the moved wallpaper is now on the top of the priority
-        List<Wallpaper> activeList = wallpaperData.getActiveWallpaperList(context);
-        WallpaperHelper.setOrIgnoreWallpaper(context, activeList);
+        TriggerEngine.getInstance(context).submit(TriggerEngine.Trigger.RULES_EDITED);
 
         return true;
     }
@@ -213,16 +224,6 @@ public class RecyclerViewAdapter
 
         Log.d(TAG, "onItemDismiss");
 
-        // Cancel the alarms if in time mode
-        if (wallpaperList.get(position).getMode().equals("Time")) {
-            Intent serviceIntent = new Intent(context, TimeService.class);
-            serviceIntent.setAction(TimeService.ACTION_UNSET_ALARM);
-            serviceIntent.putExtra(TimeService.EXTRA_INFO, wallpaperList.get(position).getInfo());
-            serviceIntent.putExtra(TimeService.EXTRA_FILENAME, wallpaperList.get(position).getFilename());
-            context.startService(serviceIntent);
-            Log.d(TAG, "Alarm cancelled");
-        }
-
         WallpaperHelper.deleteWallpaper(context, wallpaperList.get(position));
 
         wallpaperList.remove(position);
@@ -237,8 +238,7 @@ public class RecyclerViewAdapter
         wallpaperData.clearAndInsertWallpaperList(wallpaperList);
 
         // Sets default wallpaper if the current one is dismissed from the list
-        List<Wallpaper> activeList = wallpaperData.getActiveWallpaperList(context);
-        WallpaperHelper.setOrIgnoreWallpaper(context, activeList);
+        TriggerEngine.getInstance(context).submit(TriggerEngine.Trigger.RULES_EDITED);
 
         return true;
     }
@@ -0,0 +1,229 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.barbedo.dwall.engine.TimeWindow;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the boundaries of the time rules, stored in the database.
+ *
+ * Each boundary, the start or the end of the window of a rule, has a stable id that is kept
+ * as long as the rule exists, even when the rules are reordered or their windows edited. The
+ * id is used as the request code of the alarm of the boundary, so the alarms of different
+ * rules never collide, and the armed one can always be cancelled. The registry also records
+ * which boundary is armed.
+ *
+ * The ids are kept in memory and replaced as a whole when the registry changes. The writes
+ * are made by WallpaperData, inside the transaction writing the rules.
+ *
+ * @author Ricardo Barbedo
+ */
+public class AlarmRegistry {
+
+    private static final String TAG = AlarmRegistry.class.getSimpleName();
+
+    public static final int KIND_START = 0;
+    public static final int KIND_END = 1;
+
+    static final String TABLE = "alarms";
+    static final String C_ID = "_id";
+    static final String C_FILENAME = "filename";
+    static final String C_KIND = "kind";
+    static final String C_MINUTE = "minute";
+    static final String C_ARMED = "armed";
+
+    public static final int NO_ALARM = 0;
+
+    private static final String SQL_SELECT_ALL = "select " + C_ID + ", " + C_FILENAME + ", "
+            + C_KIND + ", " + C_ARMED + " from " + TABLE;
+    private static final String SQL_INSERT = "insert or ignore into " + TABLE + " ("
+            + C_FILENAME + ", " + C_KIND + ", " + C_MINUTE + ") values (?, ?, ?)";
+    private static final String SQL_UPDATE_MINUTE = "update " + TABLE + " set " + C_MINUTE
+            + " = ? where " + C_FILENAME + " = ? and " + C_KIND + " = ?";
+    private static final String SQL_SET_ARMED = "update " + TABLE + " set " + C_ARMED
+            + " = (" + C_ID + " = ?)";
+
+    // Removes the boundaries of the rules that are not time rules anymore
+    private static final String SQL_DELETE_STALE = "delete from " + TABLE + " where not exists ("
+            + "select 1 from " + WallpaperData.TABLE + " where "
+            + WallpaperData.TABLE + "." + WallpaperData.C_FILENAME + " = "
+            + TABLE + "." + C_FILENAME + " and "
+            + WallpaperData.C_MODE_CODE + " = " + Wallpaper.MODE_TIME + " and "
+            + WallpaperData.C_START_MINUTE + " is not null)";
+
+    private final SQLiteDatabase db;
+    private final SQLiteStatement insertStatement;
+    private final SQLiteStatement updateMinuteStatement;
+    private final SQLiteStatement setArmedStatement;
+    private final SQLiteStatement deleteStaleStatement;
+
+    private volatile Map<String, Integer> ids;
+    private volatile int armedId;
+
+    /**
+     * Creates the table of the registry, added in version 3 of the database.
+     */
+    static void createTable(SQLiteDatabase db) {
+        db.execSQL("create table " + TABLE + " (" + C_ID + " integer primary key autoincrement, "
+                + C_FILENAME + " text not null, " + C_KIND + " integer not null, "
+                + C_MINUTE + " integer not null, " + C_ARMED + " integer not null default 0, "
+                + "unique (" + C_FILENAME + ", " + C_KIND + "))");
+    }
+
+    /**
+     * Creates the table and registers the boundaries of the existing time rules.
+     */
+    static void upgradeToV3(SQLiteDatabase db) {
+        createTable(db);
+
+        String[] columns = {WallpaperData.C_START_MINUTE, WallpaperData.C_END_MINUTE};
+        for (int kind = KIND_START; kind <= KIND_END; kind++) {
+            db.execSQL("insert into " + TABLE + " (" + C_FILENAME + ", " + C_KIND + ", "
+                    + C_MINUTE + ") select " + WallpaperData.C_FILENAME + ", " + kind + ", "
+                    + columns[kind] + " from " + WallpaperData.TABLE + " where "
+                    + WallpaperData.C_MODE_CODE + " = " + Wallpaper.MODE_TIME + " and "
+                    + columns[kind] + " is not null");
+        }
+    }
+
+    AlarmRegistry(SQLiteDatabase db) {
+        this.db = db;
+        this.insertStatement = db.compileStatement(SQL_INSERT);
+        this.updateMinuteStatement = db.compileStatement(SQL_UPDATE_MINUTE);
+        this.setArmedStatement = db.compileStatement(SQL_SET_ARMED);
+        this.deleteStaleStatement = db.compileStatement(SQL_DELETE_STALE);
+        this.armedId = load();
+    }
+
+    /**
+     * Registers the boundaries of the time rules and removes the ones of the deleted rules.
+     * Must be called inside the transaction writing the rules, after they are written.
+     *
+     * @param wallpapers The rules written to the database.
+     */
+    synchronized void sync(List<Wallpaper> wallpapers) {
+        for (Wallpaper wallpaper : wallpapers) {
+            TimeWindow window = wallpaper.getTimeWindow();
+            if (wallpaper.getModeCode() != Wallpaper.MODE_TIME || window == null
+                    || wallpaper.filename == null) {
+                continue;
+            }
+
+            upsert(wallpaper.filename, KIND_START, window.getStart());
+            upsert(wallpaper.filename, KIND_END, window.getEnd());
+        }
+
+        deleteStaleStatement.executeUpdateDelete();
+    }
+
+    /**
+     * Reloads the ids. Must be called once the transaction calling sync is committed.
+     *
+     * The armed id is only read when the registry is created. Afterwards the one in memory is
+     * kept, as the armed row may have been deleted while its alarm is still armed.
+     *
+     * @return The id of the armed boundary found in the table.
+     */
+    synchronized int load() {
+        Map<String, Integer> loaded = new HashMap<String, Integer>();
+        int armed = NO_ALARM;
+
+        Cursor cursor = db.rawQuery(SQL_SELECT_ALL, null);
+        try {
+            while (cursor.moveToNext()) {
+                loaded.put(getKey(cursor.getString(1), cursor.getInt(2)), cursor.getInt(0));
+                if (cursor.getInt(3) != 0) {
+                    armed = cursor.getInt(0);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        ids = Collections.unmodifiableMap(loaded);
+        Log.d(TAG, ids.size() + " boundaries, armed: " + armed);
+
+        return armed;
+    }
+
+    /**
+     * @param filename Filename of the time rule.
+     * @param kind     KIND_START or KIND_END.
+     * @return         The id of the boundary, or NO_ALARM if it is not registered.
+     */
+    public int getId(String filename, int kind) {
+        Integer id = ids.get(getKey(filename, kind));
+        return id == null ? NO_ALARM : id;
+    }
+
+    /**
+     * @return The id of the armed boundary, or NO_ALARM if no alarm is armed.
+     */
+    public int getArmedId() {
+        return armedId;
+    }
+
+    /**
+     * Records the armed boundary, a single row is armed at a time.
+     *
+     * @param id The id of the boundary, or NO_ALARM.
+     */
+    public synchronized void setArmedId(int id) {
+        if (id == armedId) {
+            return;
+        }
+
+        setArmedStatement.bindLong(1, id);
+        setArmedStatement.executeUpdateDelete();
+        armedId = id;
+    }
+
+    synchronized void close() {
+        insertStatement.close();
+        updateMinuteStatement.close();
+        setArmedStatement.close();
+        deleteStaleStatement.close();
+    }
+
+    private void upsert(String filename, int kind, int minute) {
+        insertStatement.bindString(1, filename);
+        insertStatement.bindLong(2, kind);
+        insertStatement.bindLong(3, minute);
+
+        // The id is kept if the boundary exists, only its minute is updated
+        if (insertStatement.executeInsert() == -1) {
+            updateMinuteStatement.bindLong(1, minute);
+            updateMinuteStatement.bindString(2, filename);
+            updateMinuteStatement.bindLong(3, kind);
+            updateMinuteStatement.executeUpdateDelete();
+        }
+    }
+
+    private static String getKey(String filename, int kind) {
+        return kind + ":" + filename;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.barbedo.dwall.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Summary of the WifiHistory kept in memory: the number of connections to each network in each
+ * hour of the week. It is not thread safe, the history guards it.
+ *
+ * @author Ricardo Barbedo
+ */
+class ConnectionCounts {
+
+    static final int HOURS_PER_WEEK = 7 * 24;
+
+    // Connections in the predicted hours needed for a prediction
+    private static final int MIN_CONNECTIONS = 2;
+
+    private final Map<String, int[]> counts = new HashMap<String, int[]>();
+
+    /**
+     * @param ssid  Name of the network.
+     * @param slot  Hour of the week of the connection.
+     * @param delta 1 for a recorded connection, -1 for a deleted one.
+     */
+    void count(String ssid, int slot, int delta) {
+        int[] slots = counts.get(ssid);
+        if (slots == null) {
+            slots = new int[HOURS_PER_WEEK];
+            counts.put(ssid, slots);
+        }
+
+        slots[slot] += delta;
+
+        // A network without connections left is removed from the summary
+        if (delta < 0 && slots[slot] == 0 && isEmpty(slots)) {
+            counts.remove(ssid);
+        }
+    }
+
+    /**
+     * @param slot    Current hour of the week.
+     * @param current Name of the current network, never predicted.
+     * @return        The name of the network connected most often in this hour and the next
+     *                one, or null if none was connected often enough.
+     */
+    String predict(int slot, String current) {
+        int nextSlot = (slot + 1) % HOURS_PER_WEEK;
+
+        String predicted = null;
+        int best = MIN_CONNECTIONS - 1;
+
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            int connections = entry.getValue()[slot] + entry.getValue()[nextSlot];
+            if (connections > best && !entry.getKey().equals(current)) {
+                predicted = entry.getKey();
+                best = connections;
+            }
+        }
+
+        return predicted;
+    }
+
+    /**
+     * @return The number of networks with connections.
+     */
+    int size() {
+        return counts.size();
+    }
+
+    private static boolean isEmpty(int[] slots) {
+        for (int connections : slots) {
+            if (connections != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
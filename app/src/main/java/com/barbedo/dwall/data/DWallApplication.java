@@ -19,6 +19,9 @@ package com.barbedo.dwall.data;
 import android.app.Application;
 import android.util.Log;
 
+import com.barbedo.dwall.receivers.ScreenReceiver;
+import com.barbedo.dwall.services.NetworkTracker;
+
 /**
  * Application object to allow all the components to share the same data.
  *
@@ -33,7 +36,16 @@ public class DWallApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+
+        // Opens the database and loads the rule snapshot shared by all the components
         wallpaperData = new WallpaperData(getApplicationContext());
+
+        // Keeps the identity of the Wi-Fi network in memory while the process lives
+        NetworkTracker.getInstance(this).start();
+
+        // Applies the wallpaper deferred while the screen was off
+        ScreenReceiver.register(this);
+
         Log.d(TAG, "onCreate");
     }
 
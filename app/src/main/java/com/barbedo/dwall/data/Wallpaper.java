@@ -16,17 +16,34 @@
 
 package com.barbedo.dwall.data;
 
+import com.barbedo.dwall.engine.Rule;
+import com.barbedo.dwall.engine.TimeWindow;
+
 /**
  * Representation of the Wallpaper data.
  *
  * @author Ricardo Barbedo
  */
 public class Wallpaper {
+
+    // Mode codes stored in the database
+    public static final int MODE_NONE = Rule.MODE_NONE;
+    public static final int MODE_WIFI = Rule.MODE_WIFI;
+    public static final int MODE_TIME = Rule.MODE_TIME;
+
+    // Mode labels, as displayed on the spinner
+    public static final String LABEL_WIFI = "Wi-Fi";
+    public static final String LABEL_TIME = "Time";
+
     int position;
     String name;
     String mode;
     String info;
     String filename;
+    String contentHash;
+
+    // Parsed form of the info field for the time mode, created when first needed
+    TimeWindow timeWindow;
 
     /**
      * Default constructor with empty fields and position 0.
@@ -56,6 +73,17 @@ public class Wallpaper {
         this.filename = filename;
     }
 
+    /**
+     * Copy constructor.
+     *
+     * @param other The wallpaper to copy.
+     */
+    public Wallpaper(Wallpaper other) {
+        this(other.position, other.name, other.mode, other.info, other.filename);
+        this.contentHash = other.contentHash;
+        this.timeWindow = other.timeWindow;
+    }
+
     /**
      * Constructor with only the filename specified.
      * Useful for setting the default wallpaper.
@@ -86,6 +114,34 @@ public class Wallpaper {
         return filename;
     }
 
+    /**
+     * @return Hash of the wallpaper file contents, or null if it is not known.
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * @return The mode code corresponding to the mode label.
+     */
+    public int getModeCode() {
+        return getModeCode(mode);
+    }
+
+    /**
+     * @return The time window of a time mode wallpaper, or null if the info is not valid.
+     */
+    public TimeWindow getTimeWindow() {
+        if (timeWindow == null && LABEL_TIME.equals(mode)) {
+            try {
+                timeWindow = TimeWindow.parse(info);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return timeWindow;
+    }
+
     public void setPosition(int position) {
         this.position = position;
     }
@@ -98,18 +154,62 @@ public class Wallpaper {
         this.name = name;
     }
 
+    /**
+     * @return The engine representation of this wallpaper.
+     */
+    public Rule toRule() {
+        int modeCode = getModeCode();
+        return new Rule(position, modeCode, modeCode == MODE_WIFI ? info : null,
+                getTimeWindow(), filename, contentHash);
+    }
+
     public void setMode(String mode) {
         this.mode = mode;
+        this.timeWindow = null;
     }
 
     public void setInfo(String info) {
         this.info = info;
+        this.timeWindow = null;
     }
 
     public void setFilename(String filename) {
         this.filename = filename;
     }
 
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * @param mode Mode label.
+     * @return     The corresponding mode code.
+     */
+    public static int getModeCode(String mode) {
+        if (LABEL_WIFI.equals(mode)) {
+            return MODE_WIFI;
+        } else if (LABEL_TIME.equals(mode)) {
+            return MODE_TIME;
+        } else {
+            return MODE_NONE;
+        }
+    }
+
+    /**
+     * @param modeCode Mode code.
+     * @return         The corresponding mode label.
+     */
+    public static String getModeLabel(int modeCode) {
+        switch (modeCode) {
+            case MODE_WIFI:
+                return LABEL_WIFI;
+            case MODE_TIME:
+                return LABEL_TIME;
+            default:
+                return "";
+        }
+    }
+
     public String toString() {
         return position + " " + name + " " + mode + " " + info + " " + filename;
     }
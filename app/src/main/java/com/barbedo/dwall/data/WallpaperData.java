@@ -17,29 +17,32 @@
 package com.barbedo.dwall.data;
 
 import android.app.WallpaperManager;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.net.wifi.WifiManager;
 import android.os.AsyncTask;
 import android.util.Log;
 
 import com.barbedo.dwall.R;
+import com.barbedo.dwall.engine.Resolution;
+import com.barbedo.dwall.engine.Rule;
+import com.barbedo.dwall.engine.RuleIndex;
+import com.barbedo.dwall.engine.TimeWindow;
+import com.barbedo.dwall.services.NetworkTracker;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.TimeZone;
 
 /**
  * Manages the SQLite database and provides wrapper methods to access and modify it.
@@ -51,30 +54,44 @@ public class WallpaperData {
     private static final String TAG = WallpaperData.class.getSimpleName();
 
     static final String DB_NAME = "dwall.db";
-    static final int DB_VERSION = 1;
+    static final int DB_VERSION = 4;
     static final String TABLE = "dwall";
     static final String C_POSITION = "position";
     static final String C_NAME = "name";
-    static final String C_MODE = "mode";
-    static final String C_INFO = "info";
+    static final String C_MODE_CODE = "mode_code";
+    static final String C_SSID = "ssid";
+    static final String C_START_MINUTE = "start_minute";
+    static final String C_END_MINUTE = "end_minute";
     static final String C_FILENAME = "filename";
+    static final String C_CONTENT_HASH = "content_hash";
 
     private static final String GET_ALL_ORDER_BY = C_POSITION + " ASC";
 
+    // Statements compiled once and reused for the whole life of the process
+    private static final String SQL_SELECT_ALL = "select " + C_POSITION + ", " + C_NAME + ", "
+            + C_MODE_CODE + ", " + C_SSID + ", " + C_START_MINUTE + ", " + C_END_MINUTE + ", "
+            + C_FILENAME + ", " + C_CONTENT_HASH + " from " + TABLE
+            + " order by " + GET_ALL_ORDER_BY;
+    private static final String SQL_COUNT = "select count(*) from " + TABLE;
+    private static final String SQL_INSERT = "insert or replace into " + TABLE + " ("
+            + C_POSITION + ", " + C_NAME + ", " + C_MODE_CODE + ", " + C_SSID + ", "
+            + C_START_MINUTE + ", " + C_END_MINUTE + ", " + C_FILENAME + ", " + C_CONTENT_HASH
+            + ") values (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_UPDATE = "update " + TABLE + " set " + C_NAME + " = ?, "
+            + C_MODE_CODE + " = ?, " + C_SSID + " = ?, " + C_START_MINUTE + " = ?, "
+            + C_END_MINUTE + " = ?, " + C_FILENAME + " = ?, " + C_CONTENT_HASH + " = ? where "
+            + C_POSITION + " = ?";
+    private static final String SQL_DELETE_ALL = "delete from " + TABLE;
+
     /**
-     * Implementation of the SQLite helper
+     * Implementation of the SQLite helper.
+     *
+     * Each schema version has its own upgrade step, applied in order from the version found
+     * on the device, so the rules of the user are kept across updates of the app.
      */
     class DbHelper extends SQLiteOpenHelper {
 
         static final String TAG = "DbHelper";
-        static final String DB_NAME = "dwall.db";
-        static final int DB_VERSION = 1;
-        static final String TABLE = "dwall";
-        static final String C_POSITION = "position";
-        static final String C_NAME = "name";
-        static final String C_MODE = "mode";
-        static final String C_INFO = "info";
-        static final String C_FILENAME = "filename";
 
         public DbHelper(Context context) {
             super(context, DB_NAME, null, DB_VERSION);
@@ -82,238 +99,481 @@ public class WallpaperData {
 
         @Override
         public void onCreate(SQLiteDatabase db) {
-            String sql = "create table " + TABLE + " (" + C_POSITION + " int primary key, "
-                    + C_NAME + " text, " + C_MODE + " text, "
-                    + C_INFO + " text, " + C_FILENAME + " text)";
+            createTableV2(db);
+            AlarmRegistry.createTable(db);
+            WifiHistory.createTable(db);
+            Log.d(TAG, "onCreate");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            for (int version = oldVersion; version < newVersion; version++) {
+                switch (version) {
+                    case 1:
+                        upgradeToV2(db);
+                        break;
+                    case 2:
+                        AlarmRegistry.upgradeToV3(db);
+                        break;
+                    case 3:
+                        WifiHistory.createTable(db);
+                        break;
+                    default:
+                        throw new IllegalStateException("No upgrade from version " + version);
+                }
+                Log.d(TAG, "onUpgrade to version " + (version + 1));
+            }
+        }
+
+        /**
+         * Creates the rule table with typed columns and the indexes on the lookup columns.
+         */
+        private void createTableV2(SQLiteDatabase db) {
+            String sql = "create table " + TABLE + " (" + C_POSITION + " integer primary key, "
+                    + C_NAME + " text, " + C_MODE_CODE + " integer not null default "
+                    + Wallpaper.MODE_NONE + ", " + C_SSID + " text, "
+                    + C_START_MINUTE + " integer, " + C_END_MINUTE + " integer, "
+                    + C_FILENAME + " text, " + C_CONTENT_HASH + " text)";
 
             db.execSQL(sql);
+            db.execSQL("create index " + TABLE + "_ssid_idx on " + TABLE
+                    + " (" + C_MODE_CODE + ", " + C_SSID + ")");
+            db.execSQL("create index " + TABLE + "_time_idx on " + TABLE
+                    + " (" + C_MODE_CODE + ", " + C_START_MINUTE + ", " + C_END_MINUTE + ")");
 
-            Log.d(TAG, "onCreated sql: " + sql);
+            Log.d(TAG, "created sql: " + sql);
         }
 
-        @Override
-        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-            db.execSQL("drop table if exists " + TABLE);
-            Log.d(TAG, "onUpgrade");
-            onCreate(db);
+        /**
+         * Version 1 kept the mode as the spinner label and the mode information as free text,
+         * with the time windows as "HH:mm HH:mm" strings. The rows are converted to the typed
+         * columns, the content hash is filled in later when the file is imported again.
+         */
+        private void upgradeToV2(SQLiteDatabase db) {
+            db.execSQL("alter table " + TABLE + " rename to " + TABLE + "_v1");
+            createTableV2(db);
+            db.execSQL("insert into " + TABLE + " (" + C_POSITION + ", " + C_NAME + ", "
+                    + C_MODE_CODE + ", " + C_SSID + ", " + C_START_MINUTE + ", "
+                    + C_END_MINUTE + ", " + C_FILENAME + ") select position, name, "
+                    + "case mode when '" + Wallpaper.LABEL_WIFI + "' then " + Wallpaper.MODE_WIFI
+                    + " when '" + Wallpaper.LABEL_TIME + "' then " + Wallpaper.MODE_TIME
+                    + " else " + Wallpaper.MODE_NONE + " end, "
+                    + "case mode when '" + Wallpaper.LABEL_WIFI + "' then info end, "
+                    + "case mode when '" + Wallpaper.LABEL_TIME + "' then "
+                    + "cast(substr(info, 1, 2) as integer) * 60 "
+                    + "+ cast(substr(info, 4, 2) as integer) end, "
+                    + "case mode when '" + Wallpaper.LABEL_TIME + "' then "
+                    + "cast(substr(info, 7, 2) as integer) * 60 "
+                    + "+ cast(substr(info, 10, 2) as integer) end, "
+                    + "filename from " + TABLE + "_v1");
+            db.execSQL("drop table " + TABLE + "_v1");
         }
     }
 
     // Final assures that there is only one instance of the database helper when the app is running
     private final DbHelper dbHelper;
 
+    // Connection kept open while the process is alive, instead of reopened on every access
+    private final SQLiteDatabase db;
+    private final SQLiteStatement insertStatement;
+    private final SQLiteStatement updateStatement;
+    private final SQLiteStatement deleteAllStatement;
+    private final SQLiteStatement countStatement;
+    private final AlarmRegistry alarmRegistry;
+    private final WifiHistory wifiHistory;
+
+    /**
+     * In-memory copy of the rules and their compiled index, never modified after being published.
+     * Every write builds a new snapshot and replaces the reference as a whole.
+     */
+    private static class Snapshot {
+        final List<Wallpaper> wallpapers;
+        final RuleIndex index;
+
+        Snapshot(List<Wallpaper> wallpapers) {
+            List<Rule> rules = new ArrayList<Rule>(wallpapers.size());
+            for (Wallpaper wallpaper : wallpapers) {
+                rules.add(wallpaper.toRule());
+            }
+            this.wallpapers = Collections.unmodifiableList(wallpapers);
+            this.index = new RuleIndex(rules);
+        }
+    }
+
+    private volatile Snapshot snapshot;
+
+    // Cached because TimeZone.getDefault returns a new copy on every call
+    private volatile TimeZone timeZone = TimeZone.getDefault();
+
+    // Orders the rules by their priority
+    private static final Comparator<Wallpaper> POSITION_ORDER = new Comparator<Wallpaper>() {
+        @Override
+        public int compare(Wallpaper lhs, Wallpaper rhs) {
+            return lhs.position < rhs.position ? -1 : (lhs.position == rhs.position ? 0 : 1);
+        }
+    };
+
 
     /**
      * Constructor.
      *
+     * Opens the database in write-ahead logging mode, so the readers in the services do not
+     * block on the writes made by the activities, compiles the statements used by the
+     * wrapper methods and loads the rule snapshot. This is the only time the rules are read
+     * from the disk.
+     *
      * @param context The current context.
      */
     public WallpaperData(Context context) {
         this.dbHelper = new DbHelper(context);
+        this.dbHelper.setWriteAheadLoggingEnabled(true);
+        this.db = dbHelper.getWritableDatabase();
+
+        this.insertStatement = db.compileStatement(SQL_INSERT);
+        this.updateStatement = db.compileStatement(SQL_UPDATE);
+        this.deleteAllStatement = db.compileStatement(SQL_DELETE_ALL);
+        this.countStatement = db.compileStatement(SQL_COUNT);
+
+        this.snapshot = new Snapshot(loadWallpaperList());
+        this.alarmRegistry = new AlarmRegistry(db);
+        this.wifiHistory = new WifiHistory(db);
+
         Log.d(TAG, "Initialized data");
     }
 
 
-    // TODO: See if its really needed
-    public void close() {
-        this.dbHelper.close();
+    /**
+     * Releases the compiled statements and closes the connection.
+     * Only needed when the process is going away, the connection is shared otherwise.
+     */
+    public synchronized void close() {
+        insertStatement.close();
+        updateStatement.close();
+        deleteAllStatement.close();
+        countStatement.close();
+        alarmRegistry.close();
+        wifiHistory.close();
+        dbHelper.close();
     }
 
 
     /**
-     * Inserts the specified wallpaper object at the end of the database.
+     * Inserts the specified wallpaper object at its position on the database.
+     * If there is already a wallpaper at this position, it is updated in place.
+     * The row and its boundaries in the alarm registry are written in a single transaction,
+     * and the snapshot is replaced once they are written.
      *
      * @param wallpaper The desired wallpaper
      */
-    public void insertWallpaper(Wallpaper wallpaper) {
-        SQLiteDatabase db = this.dbHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
-
-        values.put(DbHelper.C_POSITION, wallpaper.position);
-        values.put(DbHelper.C_NAME, wallpaper.name);
-        values.put(DbHelper.C_MODE, wallpaper.mode);
-        values.put(DbHelper.C_INFO, wallpaper.info);
-        values.put(DbHelper.C_FILENAME, wallpaper.filename);
-
+    public synchronized void insertWallpaper(Wallpaper wallpaper) {
+        db.beginTransactionNonExclusive();
         try {
-            db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            bindUpdate(wallpaper);
+            if (updateStatement.executeUpdateDelete() == 0) {
+                bindInsert(wallpaper);
+                insertStatement.executeInsert();
+            }
+            alarmRegistry.sync(Collections.singletonList(wallpaper));
+            db.setTransactionSuccessful();
             Log.d(TAG, "Added wallpaper " + wallpaper.name);
         } catch (SQLException e) {
             Log.d(TAG, "SQLException");
+            return;
+        } finally {
+            db.endTransaction();
+            alarmRegistry.load();
+        }
+
+        List<Wallpaper> wallpapers = snapshot.wallpapers;
+        List<Wallpaper> newSnapshot = new ArrayList<Wallpaper>(wallpapers.size() + 1);
+        for (Wallpaper current : wallpapers) {
+            if (current.position != wallpaper.position) {
+                newSnapshot.add(current);
+            }
         }
+        newSnapshot.add(new Wallpaper(wallpaper));
+        Collections.sort(newSnapshot, POSITION_ORDER);
 
-        db.close();
+        snapshot = new Snapshot(newSnapshot);
     }
 
 
     /**
-     * Clears the database and fills it with the specified list
+     * Clears the database and fills it with the specified list.
+     * The whole operation, with the update of the alarm registry, is done in a single
+     * transaction, and the snapshot is replaced only if it is committed.
      *
      * @param wallpaperList The desired list of wallpapers
      */
-    public void clearAndInsertWallpaperList(List<Wallpaper> wallpaperList) {
-
-        SQLiteDatabase db = this.dbHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
-
-        db.delete(TABLE, null, null);
-
-        for (Wallpaper wallpaper : wallpaperList) {
-            values.clear();
-            values.put(DbHelper.C_POSITION, wallpaper.position);
-            values.put(DbHelper.C_NAME, wallpaper.name);
-            values.put(DbHelper.C_MODE, wallpaper.mode);
-            values.put(DbHelper.C_INFO, wallpaper.info);
-            values.put(DbHelper.C_FILENAME, wallpaper.filename);
-
-            try {
-                db.insertOrThrow(DbHelper.TABLE, null, values);
-                Log.d(TAG, "Added wallpaper " + wallpaper.name);
-            } catch (SQLException e) {
-                Log.d(TAG, "SQLException");
+    public synchronized void clearAndInsertWallpaperList(List<Wallpaper> wallpaperList) {
+
+        List<Wallpaper> newSnapshot = new ArrayList<Wallpaper>(wallpaperList.size());
+
+        db.beginTransactionNonExclusive();
+        try {
+            deleteAllStatement.executeUpdateDelete();
+
+            for (Wallpaper wallpaper : wallpaperList) {
+                try {
+                    bindInsert(wallpaper);
+                    insertStatement.executeInsert();
+                    newSnapshot.add(new Wallpaper(wallpaper));
+                    Log.d(TAG, "Added wallpaper " + wallpaper.name);
+                } catch (SQLException e) {
+                    Log.d(TAG, "SQLException");
+                }
             }
+
+            alarmRegistry.sync(newSnapshot);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            alarmRegistry.load();
         }
 
-        db.close();
+        Collections.sort(newSnapshot, POSITION_ORDER);
+        snapshot = new Snapshot(newSnapshot);
     }
 
 
     /**
+     * Returns a copy of the rules that the caller is free to modify, such as the list backing
+     * the RecyclerView. No disk access is made.
+     *
      * @return The list of wallpaper objects represented in the database
      */
     public List<Wallpaper> getWallpaperList() {
-        SQLiteDatabase db = this.dbHelper.getReadableDatabase();
-        List<Wallpaper> wallpaperList = new ArrayList<Wallpaper>();
-        Wallpaper wallpaper;
-
-        Cursor cursor = db.query(TABLE, null, null, null, null, null, GET_ALL_ORDER_BY);
+        List<Wallpaper> current = snapshot.wallpapers;
+        List<Wallpaper> wallpaperList = new ArrayList<Wallpaper>(current.size());
 
-        while (cursor.moveToNext()) {
-            wallpaper = new Wallpaper(cursor.getInt(0), cursor.getString(1),
-                    cursor.getString(2), cursor.getString(3), cursor.getString(4));
-            wallpaperList.add(wallpaper);
+        for (Wallpaper wallpaper : current) {
+            wallpaperList.add(new Wallpaper(wallpaper));
         }
 
-        db.close();
         return wallpaperList;
     }
 
 
     /**
-     * This method returns a list of the wallpapers that meet the criteria to be active.
-     * The list is ordered by the priority of the wallpaper, the same order they are displayed
-     * on the ListActivity.
+     * Reads all the rows of the database.
      *
-     * @param context  The current context, to retrieve the WifiManager.
-     * @return         A list of the wallpapers that meet the criteria to be active.
+     * @return The list of wallpaper objects represented in the database
      */
-    public List<Wallpaper> getActiveWallpaperList(Context context) {
-        List<Wallpaper> wallpaperList = getWallpaperList();
-        List<Wallpaper> activeList = new ArrayList<Wallpaper>();
+    private List<Wallpaper> loadWallpaperList() {
+        List<Wallpaper> wallpaperList;
+        Wallpaper wallpaper;
 
-        // Wifi information
-        WifiManager wifiManager = (WifiManager)
-                context.getSystemService(Context.WIFI_SERVICE);
-        String wifiName = wifiManager.getConnectionInfo().getSSID().replace("\"", "");
+        synchronized (this) {
+            wallpaperList = new ArrayList<Wallpaper>((int) countStatement.simpleQueryForLong());
+        }
 
+        Cursor cursor = db.rawQuery(SQL_SELECT_ALL, null);
 
-        for (Wallpaper wallpaper : wallpaperList) {
+        try {
+            while (cursor.moveToNext()) {
+                int modeCode = cursor.getInt(2);
+                TimeWindow window = null;
+                String info;
+
+                switch (modeCode) {
+                    case Wallpaper.MODE_WIFI:
+                        info = cursor.getString(3);
+                        break;
+                    case Wallpaper.MODE_TIME:
+                        if (!cursor.isNull(4) && !cursor.isNull(5)) {
+                            window = readWindow(cursor.getInt(4), cursor.getInt(5));
+                        }
+                        info = window == null ? "" : window.toString();
+                        break;
+                    default:
+                        info = "";
+                        break;
+                }
 
-            // Wifi filter
-            if (wallpaper.getMode().equals("Wi-Fi") &&
-                    wallpaper.getInfo().equals(wifiName)) {
-                activeList.add(wallpaper);
-                Log.d(TAG, "active: " + wallpaper.toString());
+                wallpaper = new Wallpaper(cursor.getInt(0), cursor.getString(1),
+                        Wallpaper.getModeLabel(modeCode), info, cursor.getString(6));
+                wallpaper.setContentHash(cursor.getString(7));
+                wallpaper.timeWindow = window;
+                wallpaperList.add(wallpaper);
             }
+        } finally {
+            cursor.close();
+        }
 
-            // Time filter
-            if (wallpaper.getMode().equals("Time")) {
-                String[] times = wallpaper.getInfo().split("\\s+");
-                SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm");
-                Date now = new Date();
-                String currentTime = dateFormat.format(now);
-                boolean isInInterval = false;
+        return wallpaperList;
+    }
 
-                try {
-                    isInInterval = isTimeInInterval(times[0], times[1], currentTime);
-                } catch (ParseException e) {
-                    e.printStackTrace();
-                }
 
-                if (isInInterval) {
-                    activeList.add(wallpaper);
-                    Log.d(TAG, "active: " + wallpaper.toString());
-                }
-            }
+    /**
+     * A row migrated from the text format may hold minutes out of the day, it is then treated
+     * as having no window instead of failing the load at every launch.
+     *
+     * @return The window of the row, or null if its minutes are invalid.
+     */
+    private static TimeWindow readWindow(int start, int end) {
+        try {
+            return new TimeWindow(start, end);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Invalid window: " + start + " " + end);
+            return null;
         }
+    }
+
 
-        return activeList;
+    /**
+     * Binds the wallpaper fields to the compiled insert statement.
+     *
+     * @param wallpaper The wallpaper to bind.
+     */
+    private void bindInsert(Wallpaper wallpaper) {
+        insertStatement.clearBindings();
+        insertStatement.bindLong(1, wallpaper.position);
+        bindRule(insertStatement, 2, wallpaper);
     }
 
 
     /**
-     * This functions determines if the specified time is between a start time (inclusive) and an
-     * end time (exclusive).
-     * All the times are strings with the format HH:mm.
+     * Binds the wallpaper fields to the compiled update statement.
      *
-     * @param argStartTime    Start time string
-     * @param argEndTime      End time string
-     * @param argCurrentTime  Current time string
-     * @return                True if the current time is in the interval, false otherwise
-     * @throws ParseException
+     * @param wallpaper The wallpaper to bind.
      */
-    private static boolean isTimeInInterval(String argStartTime,
-                                               String argEndTime,
-                                               String argCurrentTime) throws ParseException {
-        boolean valid = false;
-
-        // Start Time
-        Date startTime = new SimpleDateFormat("HH:mm")
-                .parse(argStartTime);
-        Calendar startCalendar = Calendar.getInstance();
-        startCalendar.setTime(startTime);
-
-        // Current Time
-        Date currentTime = new SimpleDateFormat("HH:mm")
-                .parse(argCurrentTime);
-        Calendar currentCalendar = Calendar.getInstance();
-        currentCalendar.setTime(currentTime);
-
-        // End Time
-        Date endTime = new SimpleDateFormat("HH:mm")
-                .parse(argEndTime);
-        Calendar endCalendar = Calendar.getInstance();
-        endCalendar.setTime(endTime);
-
-
-        if (currentTime.compareTo(endTime) < 0) {
-            currentCalendar.add(Calendar.DATE, 1);
-            currentTime = currentCalendar.getTime();
-        }
+    private void bindUpdate(Wallpaper wallpaper) {
+        updateStatement.clearBindings();
+        bindRule(updateStatement, 1, wallpaper);
+        updateStatement.bindLong(8, wallpaper.position);
+    }
+
 
-        if (startTime.compareTo(endTime) < 0) {
-            startCalendar.add(Calendar.DATE, 1);
-            startTime = startCalendar.getTime();
+    /**
+     * Binds the seven columns following the position, in the order of the table.
+     *
+     * @param statement The statement to bind.
+     * @param index     Index of the name parameter.
+     * @param wallpaper The wallpaper to bind.
+     */
+    private static void bindRule(SQLiteStatement statement, int index, Wallpaper wallpaper) {
+        int modeCode = wallpaper.getModeCode();
+        TimeWindow window = wallpaper.getTimeWindow();
+
+        bindStringOrNull(statement, index, wallpaper.name);
+        statement.bindLong(index + 1, modeCode);
+        bindStringOrNull(statement, index + 2,
+                modeCode == Wallpaper.MODE_WIFI ? wallpaper.info : null);
+        if (window != null) {
+            statement.bindLong(index + 3, window.getStart());
+            statement.bindLong(index + 4, window.getEnd());
         }
+        bindStringOrNull(statement, index + 5, wallpaper.filename);
+        bindStringOrNull(statement, index + 6, wallpaper.contentHash);
+    }
 
-        if (currentTime.before(startTime)) {
-            valid = false;
 
+    /**
+     * SQLiteStatement.bindString does not accept null values, unlike ContentValues.
+     */
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
         } else {
+            statement.bindString(index, value);
+        }
+    }
 
-            if (currentTime.after(endTime)) {
-                endCalendar.add(Calendar.DATE, 1);
-                endTime = endCalendar.getTime();
-            }
 
-            if (currentTime.before(endTime)) {
-                valid = true;
-            } else {
-                valid = false;
-            }
+    /**
+     * Resolves the wallpaper that must be displayed now.
+     *
+     * @param context The current context, to retrieve the NetworkTracker.
+     * @return        The winning rule and the reason why it won.
+     */
+    public Resolution resolve(Context context) {
+        String wifiName = NetworkTracker.getInstance(context).getSsid();
+
+        return resolve(wifiName, getCurrentMinuteOfDay());
+    }
+
+
+    /**
+     * Resolves the wallpaper that must be displayed for the specified conditions.
+     *
+     * @param wifiName    Name of the current network.
+     * @param minuteOfDay Current time in minutes since midnight.
+     * @return            The winning rule and the reason why it won.
+     * @see RuleIndex#resolve(String, int)
+     */
+    public Resolution resolve(String wifiName, int minuteOfDay) {
+        Resolution resolution = snapshot.index.resolve(wifiName, minuteOfDay);
 
+        // Hot path, the message is only built when it is logged
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "resolve: " + resolution.toString());
         }
 
-        return valid;
+        return resolution;
+    }
+
+
+    /**
+     * Registers again the boundaries of all the time rules, in a single transaction, as after
+     * a boot or an update of the app. The rules are taken from the snapshot.
+     */
+    public synchronized void rebuildAlarmRegistry() {
+        db.beginTransactionNonExclusive();
+        try {
+            alarmRegistry.sync(snapshot.wallpapers);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            alarmRegistry.load();
+        }
+    }
+
+
+    /**
+     * @return The registry of the boundaries of the time rules.
+     */
+    public AlarmRegistry getAlarmRegistry() {
+        return alarmRegistry;
+    }
+
+
+    /**
+     * @return The history of the Wi-Fi connections.
+     */
+    public WifiHistory getWifiHistory() {
+        return wifiHistory;
+    }
+
+
+    /**
+     * @return The compiled index of the current rule snapshot.
+     */
+    public RuleIndex getRuleIndex() {
+        return snapshot.index;
+    }
+
+
+    /**
+     * @return The time zone of the rules, reloaded by onTimeZoneChanged.
+     */
+    public TimeZone getTimeZone() {
+        return timeZone;
+    }
+
+
+    /**
+     * @return The current local time in minutes since midnight.
+     */
+    public int getCurrentMinuteOfDay() {
+        return TimeWindow.minuteOfDay(System.currentTimeMillis(), timeZone);
+    }
+
+
+    /**
+     * Reloads the cached time zone. Must be called when the device time zone is changed.
+     */
+    public void onTimeZoneChanged() {
+        timeZone = TimeZone.getDefault();
+        Log.d(TAG, "Time zone: " + timeZone.getID());
     }
 }
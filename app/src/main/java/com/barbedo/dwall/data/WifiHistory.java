@@ -0,0 +1,195 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * History of the Wi-Fi connections, stored in the database.
+ *
+ * Each connection is recorded with its hour of the week. The table keeps only the last
+ * MAX_ENTRIES connections, the oldest ones are deleted when a new one is recorded.
+ *
+ * The history is summarized in memory by the number of connections to each network in each
+ * hour of the week, see ConnectionCounts, so the network likely to be connected soon is
+ * predicted without reading the table. The summary is updated along with the table.
+ *
+ * @author Ricardo Barbedo
+ */
+public class WifiHistory {
+
+    private static final String TAG = WifiHistory.class.getSimpleName();
+
+    // Size budget of the table
+    static final int MAX_ENTRIES = 512;
+
+    static final String TABLE = "wifi_history";
+    static final String C_ID = "_id";
+    static final String C_SSID = "ssid";
+    static final String C_SLOT = "slot";
+    static final String C_TIME = "time";
+
+    private static final String SQL_SELECT = "select " + C_SSID + ", " + C_SLOT
+            + " from " + TABLE;
+    private static final String SQL_SELECT_ALL = SQL_SELECT + " order by " + C_ID;
+    private static final String SQL_SELECT_OLD = SQL_SELECT + " where " + C_ID + " <= ?";
+    private static final String SQL_INSERT = "insert into " + TABLE + " (" + C_SSID + ", "
+            + C_SLOT + ", " + C_TIME + ") values (?, ?, ?)";
+    private static final String SQL_DELETE_OLD = "delete from " + TABLE + " where "
+            + C_ID + " <= ?";
+
+    private final SQLiteDatabase db;
+    private final SQLiteStatement insertStatement;
+    private final SQLiteStatement deleteOldStatement;
+
+    // Connections to each network in each hour of the week, guarded by this
+    private final ConnectionCounts counts = new ConnectionCounts();
+
+    // Last recorded connection, also read from the table, not recorded twice in the same hour,
+    // guarded by this
+    private String lastSsid;
+    private int lastSlot = -1;
+
+    /**
+     * Creates the table of the history, added in version 4 of the database.
+     */
+    static void createTable(SQLiteDatabase db) {
+        db.execSQL("create table " + TABLE + " (" + C_ID + " integer primary key autoincrement, "
+                + C_SSID + " text not null, " + C_SLOT + " integer not null, "
+                + C_TIME + " integer not null)");
+    }
+
+    WifiHistory(SQLiteDatabase db) {
+        this.db = db;
+        this.insertStatement = db.compileStatement(SQL_INSERT);
+        this.deleteOldStatement = db.compileStatement(SQL_DELETE_OLD);
+        load();
+    }
+
+    /**
+     * Records a connection, and deletes the oldest one if the history is full.
+     *
+     * @param ssid Name of the connected network.
+     * @param time Time of the connection in milliseconds.
+     */
+    public synchronized void record(String ssid, long time) {
+        int slot = getSlot(time, TimeZone.getDefault());
+        if (ssid.equals(lastSsid) && slot == lastSlot) {
+            return;
+        }
+
+        List<String> deletedSsids = new ArrayList<String>();
+        List<Integer> deletedSlots = new ArrayList<Integer>();
+
+        db.beginTransactionNonExclusive();
+        try {
+            insertStatement.bindString(1, ssid);
+            insertStatement.bindLong(2, slot);
+            insertStatement.bindLong(3, time);
+            long id = insertStatement.executeInsert();
+
+            if (id > MAX_ENTRIES) {
+                deleteOlderThan(id - MAX_ENTRIES, deletedSsids, deletedSlots);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        // The summary is only updated once the transaction is committed
+        for (int i = 0; i < deletedSsids.size(); i++) {
+            counts.count(deletedSsids.get(i), deletedSlots.get(i), -1);
+        }
+        counts.count(ssid, slot, 1);
+        lastSsid = ssid;
+        lastSlot = slot;
+    }
+
+    /**
+     * Predicts the network connected during the current hour or the next one.
+     *
+     * @param time    Current time in milliseconds.
+     * @param current Name of the current network, never predicted.
+     * @return        The name of the network connected most often in these hours, or null if
+     *                none was connected often enough.
+     */
+    public synchronized String predict(long time, String current) {
+        return counts.predict(getSlot(time, TimeZone.getDefault()), current);
+    }
+
+    synchronized void close() {
+        insertStatement.close();
+        deleteOldStatement.close();
+    }
+
+    /**
+     * Deletes the oldest connections.
+     *
+     * @param ssids Receives the names of the deleted connections.
+     * @param slots Receives the hours of the deleted connections.
+     */
+    private void deleteOlderThan(long id, List<String> ssids, List<Integer> slots) {
+        Cursor cursor = db.rawQuery(SQL_SELECT_OLD, new String[] {String.valueOf(id)});
+        try {
+            while (cursor.moveToNext()) {
+                ssids.add(cursor.getString(0));
+                slots.add(cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        deleteOldStatement.bindLong(1, id);
+        deleteOldStatement.executeUpdateDelete();
+    }
+
+    private synchronized void load() {
+        Cursor cursor = db.rawQuery(SQL_SELECT_ALL, null);
+        try {
+            while (cursor.moveToNext()) {
+                counts.count(cursor.getString(0), cursor.getInt(1), 1);
+
+                // The rows are in order, the last one is the newest connection
+                lastSsid = cursor.getString(0);
+                lastSlot = cursor.getInt(1);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Log.d(TAG, counts.size() + " networks in the history");
+    }
+
+    /**
+     * @return The hour of the week, from 0 on Sunday at midnight.
+     */
+    static int getSlot(long time, TimeZone timeZone) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(time);
+        return (calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY) * 24
+                + calendar.get(Calendar.HOUR_OF_DAY);
+    }
+}
@@ -16,8 +16,6 @@
 
 package com.barbedo.dwall.fragments;
 
-import android.content.Context;
-import android.net.wifi.WifiManager;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v4.app.DialogFragment;
@@ -29,6 +27,7 @@ import android.widget.Button;
 import android.widget.EditText;
 
 import com.barbedo.dwall.R;
+import com.barbedo.dwall.services.NetworkTracker;
 
 /**
  * Dialog fragment to specify the Wi-Fi name.
@@ -103,12 +102,7 @@ public class WifiFragment extends DialogFragment {
     }
 
     public void writeCurrentWifi() {
-        WifiManager wifiManager = (WifiManager)
-                getActivity().getSystemService(Context.WIFI_SERVICE);
-
-        String currentName = wifiManager.getConnectionInfo().getSSID();
-
-        // Remove double quotes
-        editText.setText(currentName.replace("\"", ""));
+        // The name is kept without the double quotes by the tracker
+        editText.setText(NetworkTracker.getInstance(getActivity()).getSsid());
     }
 }
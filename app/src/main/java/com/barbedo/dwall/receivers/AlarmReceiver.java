@@ -0,0 +1,50 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.receivers;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import com.barbedo.dwall.services.AlarmScheduler;
+import com.barbedo.dwall.services.TriggerEngine;
+
+/**
+ * Receiver of the alarm armed by AlarmScheduler for the next time transition.
+ *
+ * The transition is submitted to the TriggerEngine, which resolves the wallpaper and arms the
+ * alarm of the following transition.
+ *
+ * @author Ricardo Barbedo
+ */
+public class AlarmReceiver extends BroadcastReceiver {
+
+    private final static String TAG = "AlarmReceiver";
+
+    public AlarmReceiver() {
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (AlarmScheduler.ACTION_ALARM.equals(intent.getAction())) {
+            Log.d(TAG, "Alarm of " + intent.getStringExtra(AlarmScheduler.EXTRA_FILENAME));
+            TriggerEngine.getInstance(context)
+                    .submit(TriggerEngine.Trigger.BOUNDARY_REACHED, goAsync());
+        }
+    }
+}
@@ -19,16 +19,18 @@ package com.barbedo.dwall.receivers;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.util.Log;
 
 import com.barbedo.dwall.data.DWallApplication;
-import com.barbedo.dwall.data.Wallpaper;
-import com.barbedo.dwall.data.WallpaperData;
-import com.barbedo.dwall.services.TimeService;
-
-import java.util.List;
+import com.barbedo.dwall.services.TriggerEngine;
 
 /**
- * Receiver that rearms all the alarms on boot.
+ * Receiver that rearms the alarm when the schedule may not hold anymore: on boot, when the
+ * time or the time zone is changed and when the app is updated.
+ *
+ * The broadcast is submitted to the TriggerEngine, which rebuilds the alarm registry in a single
+ * transaction from the rules already in memory and arms only the alarm of the next transition.
+ * The broadcast is kept alive by goAsync until then.
  *
  * @author Ricardo Barbedo
  */
@@ -41,20 +43,15 @@ public class BootReceiver extends BroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent intent) {
+        Log.d(TAG, "Rearm on " + intent.getAction());
 
-        DWallApplication application = (DWallApplication) context.getApplicationContext();
-        WallpaperData wallpaperData = application.getWallpaperData();
-        List<Wallpaper> wallpaperList = wallpaperData.getWallpaperList();
-
-        for (Wallpaper wallpaper : wallpaperList) {
-            if (wallpaper.getInfo().equals("Time")) {
-                Intent serviceIntent = new Intent(context, TimeService.class);
-                serviceIntent.setAction(TimeService.ACTION_SET_ALARM);
-                serviceIntent.putExtra(TimeService.EXTRA_INFO, wallpaper.getInfo());
-                serviceIntent.putExtra(TimeService.EXTRA_FILENAME, wallpaper.getFilename());
-                context.startService(serviceIntent);
-            }
+        // The time of day of the rules depends on the cached time zone
+        if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+            DWallApplication application = (DWallApplication) context.getApplicationContext();
+            application.getWallpaperData().onTimeZoneChanged();
         }
 
+        // A transition may also have been missed while the device was off or the clock moved
+        TriggerEngine.getInstance(context).submit(TriggerEngine.Trigger.BOOT, goAsync());
     }
 }
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.receivers;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.Log;
+
+import com.barbedo.dwall.services.TriggerEngine;
+
+/**
+ * Receiver that applies the wallpaper deferred while the screen was off.
+ *
+ * The screen broadcasts cannot be declared in the manifest, so this receiver is registered
+ * when the application is created and lives as long as the process. USER_PRESENT is also
+ * filtered, in case the screen was turned on before the receiver was registered. SCREEN_OFF
+ * is submitted as IDLE, to prepare the wallpaper of the network likely to be connected.
+ *
+ * @author Ricardo Barbedo
+ */
+public class ScreenReceiver extends BroadcastReceiver {
+
+    private final static String TAG = "ScreenReceiver";
+
+    /**
+     * @param context The application context.
+     */
+    public static void register(Context context) {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_USER_PRESENT);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        context.registerReceiver(new ScreenReceiver(), filter);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        Log.d(TAG, intent.getAction());
+        TriggerEngine.Trigger trigger = Intent.ACTION_SCREEN_OFF.equals(intent.getAction())
+                ? TriggerEngine.Trigger.IDLE
+                : TriggerEngine.Trigger.SCREEN_ON;
+        TriggerEngine.getInstance(context).submit(trigger);
+    }
+}
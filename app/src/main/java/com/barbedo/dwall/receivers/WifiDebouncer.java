@@ -0,0 +1,100 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.receivers;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.barbedo.dwall.services.NetworkTracker;
+
+/**
+ * Coalesces the bursts of Wi-Fi broadcasts sent during a roam or a reconnection.
+ *
+ * Each event restarts a short delay. When the delay expires, the NetworkTracker reads the
+ * identity of the network once, and submits it to the TriggerEngine only if the name changed.
+ * The broadcasts are not kept alive during the delay: the next broadcast of a manifest receiver
+ * is only delivered once the previous one is finished, so holding them would prevent the burst
+ * from being coalesced. If the process is killed while waiting, the NetworkCallback of the
+ * tracker reports the network when it is started again.
+ *
+ * All the methods run on the main thread.
+ *
+ * @author Ricardo Barbedo
+ */
+public class WifiDebouncer {
+
+    private static final String TAG = WifiDebouncer.class.getSimpleName();
+
+    // Time without events before the network is read
+    static final long DEBOUNCE_DELAY = 1500;
+
+    private static WifiDebouncer instance;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private int eventCount;
+    private int refreshCount;
+
+    private final Runnable evaluate = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+        }
+    };
+
+    private WifiDebouncer(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * @param context The current context.
+     * @return        The debouncer shared by the app.
+     */
+    public static WifiDebouncer getInstance(Context context) {
+        if (instance == null) {
+            instance = new WifiDebouncer(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Records a Wi-Fi event and restarts the delay.
+     */
+    public void onEvent() {
+        eventCount++;
+
+        handler.removeCallbacks(evaluate);
+        handler.postDelayed(evaluate, DEBOUNCE_DELAY);
+    }
+
+    /**
+     * @return The number of events that did not cause an evaluation.
+     */
+    public int getCoalescedCount() {
+        return eventCount - refreshCount;
+    }
+
+    private void refresh() {
+        refreshCount++;
+        NetworkTracker.getInstance(context).refresh();
+
+        Log.d(TAG, eventCount + " events, " + getCoalescedCount() + " coalesced");
+    }
+}
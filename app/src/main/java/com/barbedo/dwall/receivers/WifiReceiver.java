@@ -26,12 +26,11 @@ import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.util.Log;
 
-import com.barbedo.dwall.services.WifiService;
-
 /**
- * Receiver that listens to the wifi state activity and launches the WifiService.
+ * Receiver that listens to the wifi state activity.
  * This receiver filters the CONNECTIVITY_CHANGE and the WIFI_STATE_CHANGED broadcasts to see
- * if the network is down or if it was changed and launches the WifiService to change the wallpaper.
+ * if the network is down or if it was changed, and passes them to the WifiDebouncer, which
+ * refreshes the NetworkTracker once the burst of broadcasts is over.
  *
  * @author Ricardo Barbedo
  */
@@ -61,8 +60,7 @@ public class WifiReceiver extends BroadcastReceiver {
                     if (connectivityManager.getActiveNetworkInfo().isConnected() ||
                             connectivityManager.getActiveNetworkInfo().isFailover()) {
                         Log.d(TAG, "isConnected");
-                        Intent intent = new Intent(context, WifiService.class);
-                        context.startService(intent);
+                        WifiDebouncer.getInstance(context).onEvent();
                     }
                 }
 
@@ -76,8 +74,7 @@ public class WifiReceiver extends BroadcastReceiver {
 
             if (wifiState == WifiManager.WIFI_STATE_DISABLED) {
                 Log.d(TAG, "Wi-Fi disabled");
-                Intent intent = new Intent(context, WifiService.class);
-                context.startService(intent);
+                WifiDebouncer.getInstance(context).onEvent();
             }
         }
     }
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.services;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import com.barbedo.dwall.data.AlarmRegistry;
+import com.barbedo.dwall.data.DWallApplication;
+import com.barbedo.dwall.data.WallpaperData;
+import com.barbedo.dwall.engine.Rule;
+import com.barbedo.dwall.engine.RuleIndex;
+import com.barbedo.dwall.engine.TimeWindow;
+import com.barbedo.dwall.receivers.AlarmReceiver;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Arms the alarm of the next time transition.
+ *
+ * The transitions are the boundaries of the time windows where the winner among the time
+ * rules changes, see RuleIndex.getNextTransition. A single exact alarm is armed for the next
+ * one, and it is armed again for the following one when it fires, so the alarm fires once per
+ * real change of wallpaper, however many time rules exist.
+ *
+ * The alarm does not wake the device up: a transition reached while it sleeps is delivered when
+ * it wakes up, and the TriggerEngine applies the wallpaper once the screen is on.
+ *
+ * The request code of the alarm is the id of its boundary in the AlarmRegistry, so the alarm
+ * armed for a rule can be found and cancelled even after the rules are edited.
+ *
+ * @author Ricardo Barbedo
+ */
+public class AlarmScheduler {
+
+    private static final String TAG = AlarmScheduler.class.getSimpleName();
+
+    public static final String ACTION_ALARM = "com.barbedo.dwall.services.action.ALARM";
+    public static final String EXTRA_FILENAME = "com.barbedo.dwall.services.extra.FILENAME";
+    public static final String EXTRA_KIND = "com.barbedo.dwall.services.extra.KIND";
+
+    // Request codes of the registry ids start after the ones of the first versions
+    private static final int REQUEST_CODE_BASE = 1000;
+
+    // Alarms of the first versions, cancelled once
+    private static final int[] LEGACY_IDS = {131, 132};
+    private static final String LEGACY_SERVICE = "com.barbedo.dwall.services.TimeService";
+    private static boolean legacyCancelled;
+
+    private AlarmScheduler() {
+    }
+
+    /**
+     * Arms the alarm of the next transition, or cancels it if the time rules never change.
+     * Called when the rules are edited and when the alarm fires.
+     *
+     * @param context The current context.
+     * @return        The time of the alarm in milliseconds, or -1 if no alarm is armed.
+     */
+    public static synchronized long reschedule(Context context) {
+        DWallApplication application = (DWallApplication) context.getApplicationContext();
+        WallpaperData wallpaperData = application.getWallpaperData();
+        AlarmRegistry registry = wallpaperData.getAlarmRegistry();
+        RuleIndex index = wallpaperData.getRuleIndex();
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+
+        // The alarm time is computed in the same zone as the transition, the one cached by
+        // WallpaperData, even if the device zone is being changed
+        TimeZone timeZone = wallpaperData.getTimeZone();
+        long now = System.currentTimeMillis();
+        int next = index.getNextTransition(TimeWindow.minuteOfDay(now, timeZone));
+        int armedId = registry.getArmedId();
+
+        cancelLegacyAlarms(context, alarmManager);
+
+        if (next < 0) {
+            cancel(context, alarmManager, armedId);
+            registry.setArmedId(AlarmRegistry.NO_ALARM);
+            Log.d(TAG, "No transition, alarm cancelled");
+            return -1;
+        }
+
+        // Finds the boundary causing the transition, the start of the new winner or the end
+        // of the previous one
+        Rule winner = index.getTimeWinner(next);
+        String filename;
+        int kind;
+
+        if (winner != null && winner.getWindow().getStart() == next) {
+            filename = winner.getFilename();
+            kind = AlarmRegistry.KIND_START;
+        } else {
+            int previousMinute =
+                    (next + TimeWindow.MINUTES_PER_DAY - 1) % TimeWindow.MINUTES_PER_DAY;
+            Rule previous = index.getTimeWinner(previousMinute);
+            filename = previous != null ? previous.getFilename() : null;
+            kind = AlarmRegistry.KIND_END;
+        }
+
+        int id = filename != null ? registry.getId(filename, kind) : AlarmRegistry.NO_ALARM;
+
+        // The armed alarm is stale, and the registry is missing the boundary, it is rebuilt
+        // from the rules once before giving up
+        if (id == AlarmRegistry.NO_ALARM && filename != null) {
+            Log.d(TAG, "Transition at " + next + " is not registered, rebuilding");
+            cancel(context, alarmManager, armedId);
+            registry.setArmedId(AlarmRegistry.NO_ALARM);
+            armedId = AlarmRegistry.NO_ALARM;
+
+            wallpaperData.rebuildAlarmRegistry();
+            id = registry.getId(filename, kind);
+        }
+
+        if (id == AlarmRegistry.NO_ALARM) {
+            cancel(context, alarmManager, armedId);
+            registry.setArmedId(AlarmRegistry.NO_ALARM);
+            Log.d(TAG, "Transition at " + next + " has no boundary, alarm cancelled");
+            return -1;
+        }
+
+        // A single alarm is armed, the one of another boundary is cancelled
+        if (armedId != id) {
+            cancel(context, alarmManager, armedId);
+        }
+
+        long triggerAt = getTriggerTime(next, now, timeZone);
+        setExact(alarmManager, triggerAt, getPendingIntent(context, id, filename, kind,
+                PendingIntent.FLAG_UPDATE_CURRENT));
+        registry.setArmedId(id);
+
+        Log.d(TAG, "Next transition at " + next / 60 + ":" + next % 60 + ", alarm " + id);
+        return triggerAt;
+    }
+
+    /**
+     * @param minuteOfDay Minute of the transition.
+     * @param now         Current time in milliseconds.
+     * @param timeZone    Time zone of the rules.
+     * @return            The next time this minute of the day is reached, in milliseconds.
+     */
+    static long getTriggerTime(int minuteOfDay, long now, TimeZone timeZone) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(now);
+
+        calendar.set(Calendar.HOUR_OF_DAY, minuteOfDay / 60);
+        calendar.set(Calendar.MINUTE, minuteOfDay % 60);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+
+        if (calendar.getTimeInMillis() <= now) {
+            calendar.add(Calendar.DATE, 1);
+        }
+
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Exact alarms are used so the wallpaper changes on time while the device is in use. The
+     * alarm is not a wakeup one, nobody sees the wallpaper change while the device sleeps.
+     */
+    private static void setExact(AlarmManager alarmManager, long triggerAt,
+                                 PendingIntent pendingIntent) {
+        alarmManager.setExact(AlarmManager.RTC, triggerAt, pendingIntent);
+    }
+
+    /**
+     * @param id The registry id of the armed boundary, or NO_ALARM.
+     */
+    private static void cancel(Context context, AlarmManager alarmManager, int id) {
+        if (id == AlarmRegistry.NO_ALARM) {
+            return;
+        }
+
+        PendingIntent pendingIntent = getPendingIntent(context, id, null, 0,
+                PendingIntent.FLAG_NO_CREATE);
+        if (pendingIntent != null) {
+            alarmManager.cancel(pendingIntent);
+            pendingIntent.cancel();
+        }
+    }
+
+    /**
+     * The first versions armed two repeating alarms per rule, with fixed request codes, and
+     * the alarms were delivered to the TimeService, since removed.
+     */
+    private static void cancelLegacyAlarms(Context context, AlarmManager alarmManager) {
+        if (legacyCancelled) {
+            return;
+        }
+
+        for (int legacyId : LEGACY_IDS) {
+            Intent intent = new Intent();
+            intent.setClassName(context, LEGACY_SERVICE);
+            intent.setAction(ACTION_ALARM);
+
+            // Only looked up, a missing alarm is not created to be cancelled
+            PendingIntent legacy = PendingIntent.getService(context, legacyId, intent,
+                    PendingIntent.FLAG_NO_CREATE);
+            if (legacy != null) {
+                alarmManager.cancel(legacy);
+                legacy.cancel();
+            }
+        }
+        legacyCancelled = true;
+    }
+
+    /**
+     * @param id    The registry id of the boundary, used as the request code.
+     * @param flags FLAG_UPDATE_CURRENT to arm, FLAG_NO_CREATE to look up.
+     * @return      The PendingIntent, null if it is looked up and does not exist.
+     */
+    private static PendingIntent getPendingIntent(Context context, int id, String filename,
+                                                  int kind, int flags) {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ACTION_ALARM);
+        intent.putExtra(EXTRA_FILENAME, filename);
+        intent.putExtra(EXTRA_KIND, kind);
+
+        return PendingIntent.getBroadcast(context, REQUEST_CODE_BASE + id, intent, flags);
+    }
+}
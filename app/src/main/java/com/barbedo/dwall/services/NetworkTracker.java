@@ -0,0 +1,178 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.services;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.util.Log;
+
+import com.barbedo.dwall.R;
+
+/**
+ * Keeps the identity of the current Wi-Fi network in memory.
+ *
+ * A NetworkCallback is registered for the Wi-Fi networks as long as the process lives, and the
+ * name of the network is read once when it becomes available or lost. The evaluations read the
+ * cached name instead of querying the WifiManager.
+ *
+ * Only a change of name is submitted to the TriggerEngine, as the rules match the name: a roam
+ * between the access points of the same network is not evaluated. The last submitted name is
+ * kept in the shared preferences, so the first callback after the process is started is not
+ * taken for a change when the network is the same.
+ *
+ * The WifiReceiver broadcasts only refresh the identity, they wake the process if it was not
+ * running.
+ *
+ * @author Ricardo Barbedo
+ */
+public class NetworkTracker {
+
+    private static final String TAG = NetworkTracker.class.getSimpleName();
+
+    // Name reported by the WifiManager when no network is connected
+    public static final String UNKNOWN_SSID = "<unknown ssid>";
+
+    private static NetworkTracker instance;
+
+    private final Context context;
+    private final WifiManager wifiManager;
+    private final SharedPreferences sharedPreferences;
+
+    private volatile String ssid;
+
+    // Network of the callback, and last name submitted to the engine, guarded by this
+    private Network network;
+    private String submittedSsid;
+    private boolean started;
+
+    private final ConnectivityManager.NetworkCallback callback =
+            new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network available) {
+                    synchronized (NetworkTracker.this) {
+                        network = available;
+                    }
+                    refresh();
+                }
+
+                @Override
+                public void onLost(Network lost) {
+                    synchronized (NetworkTracker.this) {
+                        if (!lost.equals(network)) {
+                            return;
+                        }
+                        network = null;
+                    }
+                    update(UNKNOWN_SSID);
+                }
+            };
+
+    private NetworkTracker(Context context) {
+        this.context = context.getApplicationContext();
+        this.wifiManager = (WifiManager) this.context.getSystemService(Context.WIFI_SERVICE);
+        this.sharedPreferences = this.context.getSharedPreferences(
+                this.context.getString(R.string.shared_preferences_name), Context.MODE_PRIVATE);
+        this.submittedSsid = sharedPreferences.getString(
+                this.context.getString(R.string.submitted_ssid_key), null);
+    }
+
+    /**
+     * @param context The current context.
+     * @return        The tracker shared by the app.
+     */
+    public static synchronized NetworkTracker getInstance(Context context) {
+        if (instance == null) {
+            instance = new NetworkTracker(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Registers the callback. Called once, when the application is created.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addTransportType(NetworkCapabilities.TRANSPORT_WIFI)
+                .build();
+        connectivityManager.registerNetworkCallback(request, callback);
+
+        started = true;
+    }
+
+    /**
+     * @return The name of the current network, without the quotes, or UNKNOWN_SSID.
+     */
+    public String getSsid() {
+        String current = ssid;
+        if (current == null) {
+            // Not reported yet by the callback
+            current = read();
+            ssid = current;
+        }
+        return current;
+    }
+
+    /**
+     * Reads the name of the network again, and submits it if it changed.
+     */
+    public void refresh() {
+        update(read());
+    }
+
+    private void update(String newSsid) {
+        boolean changed;
+
+        synchronized (this) {
+            ssid = newSsid;
+            changed = !newSsid.equals(submittedSsid);
+            if (changed) {
+                submittedSsid = newSsid;
+                sharedPreferences.edit()
+                        .putString(context.getString(R.string.submitted_ssid_key), newSsid)
+                        .apply();
+            }
+        }
+
+        if (changed) {
+            Log.d(TAG, "Wi-Fi name: " + newSsid);
+            TriggerEngine.getInstance(context).submit(TriggerEngine.Trigger.WIFI_CHANGED);
+        }
+    }
+
+    /**
+     * @return The name of the current network, without the quotes, or UNKNOWN_SSID.
+     */
+    private String read() {
+        WifiInfo info = wifiManager.getConnectionInfo();
+        if (info == null || info.getSSID() == null) {
+            return UNKNOWN_SSID;
+        }
+        return info.getSSID().replace("\"", "");
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.services;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.os.PowerManager;
+import android.util.Log;
+
+import com.barbedo.dwall.data.DWallApplication;
+import com.barbedo.dwall.data.WallpaperData;
+import com.barbedo.dwall.engine.Resolution;
+import com.barbedo.dwall.utils.ApplyCoordinator;
+import com.barbedo.dwall.utils.WallpaperFingerprint;
+import com.barbedo.dwall.utils.WallpaperHelper;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Processes the triggers that may change the wallpaper, on a single background thread.
+ *
+ * The receivers and the UI only submit the trigger. The triggers submitted while an evaluation
+ * is queued are merged with it, and each batch runs a single evaluation: the alarm is armed
+ * again if the schedule may have changed, the wallpaper is resolved once and handed to the
+ * ApplyCoordinator.
+ *
+ * The Wi-Fi connections are recorded in the WifiHistory. IDLE, sent when the screen is turned
+ * off, prepares the wallpaper of the network the history predicts, so it is ready when the
+ * device connects to it.
+ *
+ * While the screen is off, the winner is not applied, so the wallpapers nobody sees are not
+ * decoded. SCREEN_ON always resolves it again and hands it to the ApplyCoordinator, which
+ * ignores it if it is already on the screen, so nothing is lost if the process is killed while
+ * the screen is off.
+ *
+ * The broadcasts of the receivers are kept alive with goAsync until their batch is processed.
+ *
+ * @author Ricardo Barbedo
+ */
+public class TriggerEngine {
+
+    private static final String TAG = TriggerEngine.class.getSimpleName();
+
+    /**
+     * The events processed by the engine.
+     */
+    public enum Trigger {
+        WIFI_CHANGED,
+        BOUNDARY_REACHED,
+        RULES_EDITED,
+        BOOT,
+        SCREEN_ON,
+        IDLE
+    }
+
+    private static TriggerEngine instance;
+
+    private final Context context;
+    private final PowerManager powerManager;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    // Batch waiting for the executor, guarded by this
+    private final EnumSet<Trigger> pending = EnumSet.noneOf(Trigger.class);
+    private final List<BroadcastReceiver.PendingResult> pendingResults =
+            new ArrayList<BroadcastReceiver.PendingResult>();
+    private boolean queued;
+
+    private final Runnable process = new Runnable() {
+        @Override
+        public void run() {
+            processBatch();
+        }
+    };
+
+    private TriggerEngine(Context context) {
+        this.context = context.getApplicationContext();
+        this.powerManager = (PowerManager) this.context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    /**
+     * @param context The current context.
+     * @return        The engine shared by the app.
+     */
+    public static synchronized TriggerEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new TriggerEngine(context);
+        }
+        return instance;
+    }
+
+    /**
+     * @param trigger The event to process.
+     */
+    public void submit(Trigger trigger) {
+        submit(trigger, null);
+    }
+
+    /**
+     * @param trigger The event to process.
+     * @param result  The result of the broadcast, finished once the batch is processed.
+     */
+    public void submit(Trigger trigger, BroadcastReceiver.PendingResult result) {
+        List<BroadcastReceiver.PendingResult> results =
+                new ArrayList<BroadcastReceiver.PendingResult>();
+        if (result != null) {
+            results.add(result);
+        }
+        enqueue(trigger, results);
+    }
+
+    private synchronized void enqueue(Trigger trigger,
+                                      List<BroadcastReceiver.PendingResult> results) {
+        pending.add(trigger);
+        pendingResults.addAll(results);
+
+        // The trigger is merged with the batch already queued
+        if (!queued) {
+            queued = true;
+            executor.execute(process);
+        }
+    }
+
+    /**
+     * Runs on the engine thread.
+     */
+    private void processBatch() {
+        EnumSet<Trigger> batch;
+        List<BroadcastReceiver.PendingResult> results;
+
+        synchronized (this) {
+            batch = EnumSet.copyOf(pending);
+            results = new ArrayList<BroadcastReceiver.PendingResult>(pendingResults);
+            pending.clear();
+            pendingResults.clear();
+            queued = false;
+        }
+
+        try {
+            evaluate(batch);
+        } catch (RuntimeException e) {
+            // The engine thread must survive a failed evaluation, the next trigger retries it
+            Log.e(TAG, "Evaluation of " + batch + " failed", e);
+        } finally {
+            for (BroadcastReceiver.PendingResult result : results) {
+                result.finish();
+            }
+        }
+    }
+
+    private void evaluate(EnumSet<Trigger> batch) {
+        DWallApplication application = (DWallApplication) context;
+        WallpaperData wallpaperData = application.getWallpaperData();
+
+        if (batch.remove(Trigger.IDLE)) {
+            prepareLikelyNetwork(wallpaperData);
+        }
+
+        if (batch.contains(Trigger.WIFI_CHANGED)) {
+            String ssid = NetworkTracker.getInstance(context).getSsid();
+            if (!NetworkTracker.UNKNOWN_SSID.equals(ssid)) {
+                wallpaperData.getWifiHistory().record(ssid, System.currentTimeMillis());
+            }
+        }
+
+        // Only preparations
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Log.d(TAG, "Evaluating " + batch);
+
+        if (batch.contains(Trigger.BOOT)) {
+            wallpaperData.rebuildAlarmRegistry();
+        }
+
+        // Only a Wi-Fi change or the screen leave the schedule as it is
+        boolean scheduleChanged =
+                !EnumSet.of(Trigger.WIFI_CHANGED, Trigger.SCREEN_ON).containsAll(batch);
+        if (scheduleChanged) {
+            AlarmScheduler.reschedule(context);
+        }
+
+        Resolution resolution = wallpaperData.resolve(context);
+
+        if (!powerManager.isInteractive()) {
+            Log.d(TAG, "Screen off, " + resolution.getFilename() + " deferred");
+        } else {
+            WallpaperHelper.setOrIgnoreWallpaper(context, resolution);
+        }
+    }
+
+    /**
+     * Prepares the wallpaper that wins if the device connects to the network predicted by the
+     * history.
+     */
+    private void prepareLikelyNetwork(WallpaperData wallpaperData) {
+        String likely = wallpaperData.getWifiHistory().predict(System.currentTimeMillis(),
+                NetworkTracker.getInstance(context).getSsid());
+        if (likely == null) {
+            return;
+        }
+
+        Log.d(TAG, "Likely network: " + likely);
+        prepare(wallpaperData.resolve(likely, wallpaperData.getCurrentMinuteOfDay()));
+    }
+
+    /**
+     * Renders the wallpaper of the winner if needed, unless it is the one on the screen.
+     */
+    private void prepare(Resolution resolution) {
+        WallpaperFingerprint fingerprint = WallpaperHelper.getFingerprint(context, resolution);
+
+        if (!fingerprint.equals(ApplyCoordinator.getInstance(context).getApplied())) {
+            WallpaperHelper.prepareScreenVariant(context, resolution.getFilename());
+        }
+    }
+}
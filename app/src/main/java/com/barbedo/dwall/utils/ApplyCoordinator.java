@@ -0,0 +1,197 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.barbedo.dwall.R;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies the system wallpaper, one request at a time.
+ *
+ * Every request is tagged with a generation number. The requests run on a single thread, and
+ * a request that is not the latest one when its turn comes is dropped, so a burst of triggers
+ * costs a single apply, of the last winner. A running request is also dropped between the
+ * rendering and the apply if a newer one arrived meanwhile.
+ *
+ * The fingerprint of the applied wallpaper is recorded only after the WallpaperManager
+ * succeeded. It is kept in memory and in the shared preferences, so a request for what is
+ * already on the screen, or already on its way, is ignored without touching the disk.
+ *
+ * @author Ricardo Barbedo
+ */
+public class ApplyCoordinator {
+
+    private static final String TAG = ApplyCoordinator.class.getSimpleName();
+
+    private static ApplyCoordinator instance;
+
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicLong generation = new AtomicLong();
+
+    // Last applied wallpaper and last requested one, guarded by this
+    private WallpaperFingerprint applied;
+    private WallpaperFingerprint latest;
+    private boolean loaded;
+
+    private ApplyCoordinator(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * @param context The current context.
+     * @return        The coordinator shared by the app.
+     */
+    public static synchronized ApplyCoordinator getInstance(Context context) {
+        if (instance == null) {
+            instance = new ApplyCoordinator(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Requests the wallpaper to be applied, unless it is the one on the screen or the one
+     * already requested.
+     *
+     * @param fingerprint The wallpaper to display.
+     * @return            True if a request was made.
+     */
+    public synchronized boolean applyIfChanged(WallpaperFingerprint fingerprint) {
+        loadApplied();
+
+        if (fingerprint.equals(latest)) {
+            Log.d(TAG, fingerprint.getFilename() + " is already applied");
+            return false;
+        }
+
+        apply(fingerprint);
+        return true;
+    }
+
+    /**
+     * Requests the wallpaper to be applied, superseding the pending requests.
+     *
+     * @param fingerprint The wallpaper to display.
+     * @return            The generation of the request.
+     */
+    public synchronized long apply(final WallpaperFingerprint fingerprint) {
+        loadApplied();
+        final long requestGeneration = generation.incrementAndGet();
+        latest = fingerprint;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                applyIfLatest(requestGeneration, fingerprint);
+            }
+        });
+
+        return requestGeneration;
+    }
+
+    /**
+     * @return The fingerprint of the wallpaper on the screen, null if it is not known.
+     */
+    public synchronized WallpaperFingerprint getApplied() {
+        loadApplied();
+        return applied;
+    }
+
+    /**
+     * @param requestGeneration The generation of a request.
+     * @return                  True if a newer request was made.
+     */
+    public boolean isSuperseded(long requestGeneration) {
+        return requestGeneration != generation.get();
+    }
+
+    /**
+     * Runs on the apply thread.
+     */
+    private void applyIfLatest(long requestGeneration, WallpaperFingerprint fingerprint) {
+        String filename = fingerprint.getFilename();
+
+        if (isSuperseded(requestGeneration)) {
+            Log.d(TAG, "Request " + requestGeneration + " for " + filename + " superseded");
+            return;
+        }
+
+        File file = WallpaperHelper.getScreenVariant(context, filename);
+
+        // The rendering can be long, a newer request may have arrived meanwhile
+        if (file != null && isSuperseded(requestGeneration)) {
+            Log.d(TAG, "Request " + requestGeneration + " for " + filename + " superseded");
+            return;
+        }
+
+        if (file != null && WallpaperHelper.streamToSystem(context, file)) {
+            onApplied(fingerprint);
+            Log.d(TAG, "Request " + requestGeneration + ": " + filename + " applied");
+        } else {
+            onFailed(requestGeneration);
+            Log.d(TAG, "Request " + requestGeneration + ": could not apply " + filename);
+        }
+    }
+
+    private void onApplied(WallpaperFingerprint fingerprint) {
+        synchronized (this) {
+            applied = fingerprint;
+        }
+
+        SharedPreferences sharedPreferences = context.getSharedPreferences(
+                context.getString(R.string.shared_preferences_name), Context.MODE_PRIVATE);
+        sharedPreferences.edit()
+                .putString(context.getString(R.string.current_wallpaper_key),
+                        fingerprint.getFilename())
+                .putString(context.getString(R.string.applied_fingerprint_key),
+                        fingerprint.toString())
+                .commit();
+    }
+
+    /**
+     * The screen still shows the applied wallpaper, so the same request can be made again.
+     */
+    private synchronized void onFailed(long requestGeneration) {
+        if (!isSuperseded(requestGeneration)) {
+            latest = applied;
+        }
+    }
+
+    /**
+     * Reads the applied fingerprint saved by a previous process, only once.
+     */
+    private void loadApplied() {
+        if (loaded) {
+            return;
+        }
+
+        SharedPreferences sharedPreferences = context.getSharedPreferences(
+                context.getString(R.string.shared_preferences_name), Context.MODE_PRIVATE);
+        applied = WallpaperFingerprint.parse(sharedPreferences.getString(
+                context.getString(R.string.applied_fingerprint_key), null));
+        latest = applied;
+        loaded = true;
+    }
+}
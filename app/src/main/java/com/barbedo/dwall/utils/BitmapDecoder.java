@@ -0,0 +1,189 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.utils;
+
+import android.app.WallpaperManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+/**
+ * Decodes images directly at the size they are displayed.
+ *
+ * The bounds of the image are read first, so the decoder can skip pixels with inSampleSize
+ * and never hold the full resolution image in memory. The sampled image is then scaled and
+ * center cropped to the exact target size.
+ *
+ * The decoding options and the temporary buffer are reused across calls, so an instance must
+ * not be shared by threads decoding at the same time. The calls are serialized otherwise.
+ *
+ * @author Ricardo Barbedo
+ */
+public class BitmapDecoder {
+
+    private static final String TAG = BitmapDecoder.class.getSimpleName();
+
+    // Buffer used by BitmapFactory to read the file
+    private static final int TEMP_STORAGE_SIZE = 16 * 1024;
+
+    private final BitmapFactory.Options options = new BitmapFactory.Options();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Matrix matrix = new Matrix();
+
+    public BitmapDecoder() {
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inTempStorage = new byte[TEMP_STORAGE_SIZE];
+    }
+
+    /**
+     * Decodes the image file to the exact target size, keeping its aspect ratio.
+     *
+     * @param path         Path of the image file.
+     * @param targetWidth  Width of the result in pixels.
+     * @param targetHeight Height of the result in pixels.
+     * @return             The decoded image, or null if the file could not be decoded.
+     */
+    public synchronized Bitmap decode(String path, int targetWidth, int targetHeight) {
+
+        // Reads only the header of the image
+        options.inJustDecodeBounds = true;
+        options.inSampleSize = 1;
+        BitmapFactory.decodeFile(path, options);
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.d(TAG, "Could not read the bounds of " + path);
+            return null;
+        }
+
+        return decode(path, options.outWidth, options.outHeight, targetWidth, targetHeight);
+    }
+
+    /**
+     * Decodes the image file to the exact target size, keeping its aspect ratio.
+     * The bounds of the image are already known, so the header is not read again.
+     *
+     * @param path         Path of the image file.
+     * @param width        Width of the image file.
+     * @param height       Height of the image file.
+     * @param targetWidth  Width of the result in pixels.
+     * @param targetHeight Height of the result in pixels.
+     * @return             The decoded image, or null if the file could not be decoded.
+     */
+    public synchronized Bitmap decode(String path, int width, int height,
+                                      int targetWidth, int targetHeight) {
+
+        options.inSampleSize = computeSampleSize(width, height, targetWidth, targetHeight);
+        options.inJustDecodeBounds = false;
+
+        Bitmap sampled = BitmapFactory.decodeFile(path, options);
+        if (sampled == null) {
+            return null;
+        }
+
+        Log.d(TAG, "Decoded " + sampled.getWidth() + "x" + sampled.getHeight()
+                + " with sample size " + options.inSampleSize);
+
+        return scaleAndCrop(sampled, targetWidth, targetHeight);
+    }
+
+    /**
+     * Reads the bounds of the image file, only its header is read.
+     *
+     * @param path Path of the image file.
+     * @return     The size of the image, width then height, or null if it is not an image.
+     */
+    public static int[] readBounds(String path) {
+        BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+        boundsOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, boundsOptions);
+
+        if (boundsOptions.outWidth <= 0 || boundsOptions.outHeight <= 0) {
+            return null;
+        }
+
+        return new int[] {boundsOptions.outWidth, boundsOptions.outHeight};
+    }
+
+    /**
+     * Computes the largest power of two sample size that keeps the decoded image at least as
+     * big as the target in both dimensions.
+     *
+     * @param width        Width of the source image.
+     * @param height       Height of the source image.
+     * @param targetWidth  Width of the target.
+     * @param targetHeight Height of the target.
+     * @return             The sample size to use with BitmapFactory.
+     */
+    public static int computeSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+
+        while (width / (sampleSize * 2) >= targetWidth &&
+                height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+
+        return sampleSize;
+    }
+
+    /**
+     * @param context The current context.
+     * @return        The size of the system wallpaper in pixels, width then height.
+     */
+    public static int[] getWallpaperSize(Context context) {
+        WallpaperManager wallpaperManager = WallpaperManager.getInstance(context);
+        int width = wallpaperManager.getDesiredMinimumWidth();
+        int height = wallpaperManager.getDesiredMinimumHeight();
+
+        // No size is requested by the launcher, the screen is used instead
+        if (width <= 0 || height <= 0) {
+            DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+            width = metrics.widthPixels;
+            height = metrics.heightPixels;
+        }
+
+        return new int[] {width, height};
+    }
+
+    /**
+     * Scales the image to cover the target and crops what exceeds it, in a single draw.
+     * The source bitmap is recycled.
+     */
+    private Bitmap scaleAndCrop(Bitmap source, int targetWidth, int targetHeight) {
+        if (source.getWidth() == targetWidth && source.getHeight() == targetHeight) {
+            return source;
+        }
+
+        float scale = Math.max((float) targetWidth / source.getWidth(),
+                (float) targetHeight / source.getHeight());
+
+        matrix.setScale(scale, scale);
+        matrix.postTranslate((targetWidth - source.getWidth() * scale) / 2,
+                (targetHeight - source.getHeight() * scale) / 2);
+
+        Bitmap target = Bitmap.createBitmap(targetWidth, targetHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+        canvas.drawBitmap(source, matrix, paint);
+        source.recycle();
+
+        return target;
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.utils;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.barbedo.dwall.R;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the thumbnails of the wallpapers into image views.
+ *
+ * The thumbnails are decoded on background threads and kept in a memory cache bounded by the
+ * size of the bitmaps, so a view displayed again is bound without touching the disk. A request
+ * is tied to its view: binding the view to another thumbnail, or cancelling it when the view
+ * is recycled, drops the previous request.
+ *
+ * The methods taking a view must be called on the main thread.
+ *
+ * @author Ricardo Barbedo
+ */
+public class ImageLoader {
+
+    private static final String TAG = ImageLoader.class.getSimpleName();
+
+    // Part of the memory of the app given to the cache
+    private static final int CACHE_FRACTION = 16;
+    private static final int THREAD_COUNT = 2;
+
+    private static ImageLoader instance;
+
+    private final Context context;
+    private final LruCache<String, Bitmap> cache;
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Request currently bound to each view, only touched on the main thread
+    private final Map<ImageView, Request> requests = new WeakHashMap<ImageView, Request>();
+
+    /**
+     * Load of a thumbnail into a view.
+     */
+    private class Request implements Runnable {
+        // The request is the value of its view in the map, so the view must not be held
+        private final WeakReference<ImageView> viewReference;
+        private final String filename;
+        private final WallpaperHelper.Thumbnail thumbnail;
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        Request(ImageView view, String filename, WallpaperHelper.Thumbnail thumbnail) {
+            this.viewReference = new WeakReference<ImageView>(view);
+            this.filename = filename;
+            this.thumbnail = thumbnail;
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+
+            File file = WallpaperHelper.getThumbnailFile(context, filename, thumbnail);
+            final Bitmap bitmap = file != null ? BitmapFactory.decodeFile(file.getPath()) : null;
+
+            if (bitmap == null) {
+                Log.d(TAG, "No thumbnail for " + filename);
+            } else {
+                cache.put(getKey(filename, thumbnail), bitmap);
+            }
+
+            // The request is unbound from its view even if the thumbnail is missing
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    ImageView view = viewReference.get();
+                    if (view == null || requests.get(view) != Request.this) {
+                        return;
+                    }
+
+                    requests.remove(view);
+                    if (!cancelled && bitmap != null) {
+                        view.setImageBitmap(bitmap);
+                    }
+                }
+            });
+        }
+    }
+
+    private ImageLoader(Context context) {
+        this.context = context.getApplicationContext();
+
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int cacheSize = activityManager.getMemoryClass() * 1024 * 1024 / CACHE_FRACTION;
+
+        cache = new LruCache<String, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * @param context The current context.
+     * @return        The loader shared by the app.
+     */
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ImageLoader(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Displays the thumbnail of the wallpaper in the view, directly if it is in the cache.
+     * Otherwise a blank image is displayed until the thumbnail is decoded.
+     *
+     * @param view      The view displaying the thumbnail.
+     * @param filename  The name of the wallpaper.
+     * @param thumbnail The size of the thumbnail.
+     */
+    public void load(ImageView view, String filename, WallpaperHelper.Thumbnail thumbnail) {
+        cancel(view);
+
+        Bitmap bitmap = cache.get(getKey(filename, thumbnail));
+        if (bitmap != null) {
+            view.setImageBitmap(bitmap);
+            return;
+        }
+
+        view.setImageResource(R.drawable.blank);
+
+        Request request = new Request(view, filename, thumbnail);
+        requests.put(view, request);
+        request.future = executor.submit(request);
+    }
+
+    /**
+     * Drops the request bound to the view, as when the view is recycled.
+     *
+     * @param view The view displaying the thumbnail.
+     */
+    public void cancel(ImageView view) {
+        Request request = requests.remove(view);
+        if (request != null) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Removes the thumbnails of the wallpaper from the cache, after its files are replaced or
+     * deleted. Can be called from any thread.
+     *
+     * @param filename The name of the wallpaper.
+     */
+    public void evict(String filename) {
+        for (WallpaperHelper.Thumbnail thumbnail : WallpaperHelper.Thumbnail.values()) {
+            cache.remove(getKey(filename, thumbnail));
+        }
+    }
+
+    private static String getKey(String filename, WallpaperHelper.Thumbnail thumbnail) {
+        return filename + thumbnail.getSuffix();
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.utils;
+
+/**
+ * Identifies what is displayed as the system wallpaper: the file, its content and the size it
+ * was rendered at. Two equal fingerprints produce the same pixels on the screen.
+ *
+ * @author Ricardo Barbedo
+ */
+public final class WallpaperFingerprint {
+
+    private static final String SEPARATOR = "|";
+
+    private final String filename;
+    private final String contentHash;
+    private final int width;
+    private final int height;
+
+    /**
+     * @param filename    The name of the wallpaper file.
+     * @param contentHash The hash of the imported file, null if it is not known.
+     * @param width       Width of the system wallpaper.
+     * @param height      Height of the system wallpaper.
+     */
+    public WallpaperFingerprint(String filename, String contentHash, int width, int height) {
+        this.filename = filename;
+        this.contentHash = contentHash;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Reads a fingerprint saved with toString.
+     *
+     * @param value The saved fingerprint.
+     * @return      The fingerprint, or null if the value is null or malformed.
+     */
+    public static WallpaperFingerprint parse(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        String[] fields = value.split("\\|", -1);
+        if (fields.length != 4) {
+            return null;
+        }
+
+        try {
+            return new WallpaperFingerprint(fields[0],
+                    fields[1].isEmpty() ? null : fields[1],
+                    Integer.parseInt(fields[2]),
+                    Integer.parseInt(fields[3]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WallpaperFingerprint)) {
+            return false;
+        }
+
+        WallpaperFingerprint other = (WallpaperFingerprint) o;
+        return width == other.width
+                && height == other.height
+                && filename.equals(other.filename)
+                && (contentHash == null ? other.contentHash == null
+                        : contentHash.equals(other.contentHash));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = filename.hashCode();
+        result = 31 * result + (contentHash != null ? contentHash.hashCode() : 0);
+        result = 31 * result + width;
+        result = 31 * result + height;
+        return result;
+    }
+
+    /**
+     * @return The fingerprint in the format read by parse.
+     */
+    @Override
+    public String toString() {
+        return filename + SEPARATOR + (contentHash != null ? contentHash : "")
+                + SEPARATOR + width + SEPARATOR + height;
+    }
+}
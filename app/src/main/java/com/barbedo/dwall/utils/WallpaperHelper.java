@@ -23,17 +23,24 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.media.ThumbnailUtils;
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import com.barbedo.dwall.R;
+import com.barbedo.dwall.engine.Resolution;
 import com.barbedo.dwall.data.Wallpaper;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 
 /**
@@ -43,60 +50,450 @@ public class WallpaperHelper {
 
     private static final String TAG = WallpaperHelper.class.getSimpleName();
 
-    // Size of the thumbnail in pixels
-    private static final int THUMB_WIDTH = 108;
-    private static final int THUMB_HEIGHT = 192;
+    // Thumbnails are small and only displayed, a lossy WEBP is enough
+    private static final Bitmap.CompressFormat THUMB_FORMAT = Bitmap.CompressFormat.WEBP;
+    private static final int THUMB_QUALITY = 80;
+
+    // Suffix of the copy rendered at the size of the system wallpaper
+    public static final String SCREEN_SUFFIX = "_screen";
+    private static final int SCREEN_QUALITY = 95;
+
+    // Suffix of the files being written, renamed once complete
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Hash of the imported files, used to know if two files have the same content
+    private static final String HASH_ALGORITHM = "SHA-1";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // Size of the mapped regions and of the buffer used when the source is a stream
+    private static final long COPY_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    // Shared by the import and the apply threads, its calls are serialized
+    private static final BitmapDecoder decoder = new BitmapDecoder();
+
+    /**
+     * Thumbnails of a wallpaper, one for each screen displaying it, sized in dp so they match
+     * the density of the device.
+     */
+    public enum Thumbnail {
+        LIST("_th", R.dimen.thumb_list_width, R.dimen.thumb_list_height),
+        EDIT("_th_m", R.dimen.thumb_edit_width, R.dimen.thumb_edit_height),
+        DEFAULT("_th_l", R.dimen.thumb_default_width, R.dimen.thumb_default_height);
+
+        private final String suffix;
+        private final int widthId;
+        private final int heightId;
+
+        Thumbnail(String suffix, int widthId, int heightId) {
+            this.suffix = suffix;
+            this.widthId = widthId;
+            this.heightId = heightId;
+        }
+
+        /**
+         * @return The suffix appended to the name of the wallpaper.
+         */
+        public String getSuffix() {
+            return suffix;
+        }
+
+        /**
+         * @param context The current context.
+         * @return        The size in pixels, width then height.
+         */
+        public int[] getSize(Context context) {
+            return new int[] {context.getResources().getDimensionPixelSize(widthId),
+                    context.getResources().getDimensionPixelSize(heightId)};
+        }
+    }
+
+    /**
+     * Result of an import: the hash of the copied bytes and the bounds of the image.
+     */
+    public static class ImportResult {
+        private final String contentHash;
+        private final int width;
+        private final int height;
+
+        ImportResult(String contentHash, int width, int height) {
+            this.contentHash = contentHash;
+            this.width = width;
+            this.height = height;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    /**
+     * Follows an import running in the background, see WallpaperImporter.
+     * The methods are called on the importing thread.
+     */
+    public interface ImportObserver {
+
+        /**
+         * @return True if the import must stop, its files are then deleted.
+         */
+        boolean isCancelled();
+
+        /**
+         * @param copied Number of bytes already copied.
+         * @param total  Size of the source, or -1 if it is not known.
+         */
+        void onBytesCopied(long copied, long total);
+
+        /**
+         * The thumbnail was written, the screen copy is still being rendered.
+         */
+        void onThumbnailReady();
+    }
 
     /**
      * Static method to copy the selected file to the internal storage.
      *
-     * This method also creates a thumbnail of the image with "_th" appended to the end of the
-     * name, so it can be set on the ImageView.
+     * @see #copyWallpaperToStorage(Context, Uri, String, ImportObserver)
+     */
+    public static ImportResult copyWallpaperToStorage(Context context, Uri uri, String filename) {
+        return copyWallpaperToStorage(context, uri, filename, null);
+    }
+
+    /**
+     * Static method to copy the selected file to the internal storage.
+     *
+     * The file is copied between channels, so the bytes are not brought through a buffer of
+     * the app, and hashed while they are copied. The original is then decoded a single time,
+     * at the size of the system wallpaper, and saved with "_screen" appended to the name.
+     * The thumbnails, see Thumbnail, are scaled from that decoded image.
+     *
+     * Every file is synced to the disk before the method returns.
      *
      * @param context  The current context.
      * @param uri      The wallpaper containing the filename.
      * @param filename The name of the file to save.
+     * @param observer Receives the progress and can cancel the import, may be null.
+     * @return         The hash and the bounds of the image, or null if it could not be copied,
+     *                 if it is not an image or if the import was cancelled.
      */
-    public static void copyWallpaperToStorage(Context context, Uri uri, String filename) {
+    public static ImportResult copyWallpaperToStorage(Context context, Uri uri, String filename,
+                                                      ImportObserver observer) {
+        String contentHash;
+
         // Copies to internal data
         try {
-            InputStream input = context.getContentResolver().openInputStream(uri);
-            FileOutputStream fos = context.openFileOutput(filename, Context.MODE_PRIVATE);
-            int bufferSize = 1024;
-            byte[] buffer = new byte[bufferSize];
-            int len = 0;
-            while ((len = input.read(buffer)) != -1) {
-                fos.write(buffer, 0, len);
-            }
-            if (fos != null)
-                fos.close();
-        } catch (Exception e) {
+            contentHash = copyAndHash(context, uri, filename, observer);
+        } catch (IOException e) {
             e.printStackTrace();
+            context.deleteFile(filename);
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        if (contentHash == null) {
+            Log.d(TAG, "Import of " + filename + " cancelled");
+            context.deleteFile(filename);
+            return null;
         }
 
         File filePath = context.getFileStreamPath(filename);
-        Log.d(TAG, "Internal filepath: " + filePath.toString());
+        Log.d(TAG, "Internal filepath: " + filePath.toString() + ", hash: " + contentHash);
 
-        // Create a thumbnail
-        Bitmap thumbnail = ThumbnailUtils.extractThumbnail(BitmapFactory.
-                decodeFile(filePath.getAbsolutePath()), THUMB_WIDTH, THUMB_HEIGHT);
+        // Only the header is read, the pages were just written and are still cached
+        int[] bounds = BitmapDecoder.readBounds(filePath.getPath());
+        if (bounds == null) {
+            Log.d(TAG, filename + " is not an image");
+            context.deleteFile(filename);
+            return null;
+        }
+
+        int[] size = BitmapDecoder.getWallpaperSize(context);
+        Bitmap bitmap = decoder.decode(filePath.getPath(), bounds[0], bounds[1], size[0], size[1]);
+        if (bitmap == null) {
+            Log.d(TAG, "Could not render " + filename);
+            return new ImportResult(contentHash, bounds[0], bounds[1]);
+        }
+
+        if (observer != null && observer.isCancelled()) {
+            bitmap.recycle();
+            deleteWallpaper(context, new Wallpaper(filename));
+            return null;
+        }
+
+        // Create the thumbnails, the screen image is already much smaller than the original
+        boolean thumbnailWritten = true;
+        for (Thumbnail thumbnailSize : Thumbnail.values()) {
+            int[] thumbSize = thumbnailSize.getSize(context);
+            Bitmap thumbnail =
+                    ThumbnailUtils.extractThumbnail(bitmap, thumbSize[0], thumbSize[1]);
+            thumbnailWritten &= writeBitmapAtomically(context,
+                    filename + thumbnailSize.getSuffix(), thumbnail, THUMB_FORMAT, THUMB_QUALITY);
+            thumbnail.recycle();
+        }
+
+        // Thumbnails of a previous image with the same name may be cached
+        ImageLoader.getInstance(context).evict(filename);
+
+        if (thumbnailWritten && observer != null) {
+            observer.onThumbnailReady();
+        }
+
+        // A concurrent apply may render it too, and a partial file would pass the staleness check
+        writeBitmapAtomically(context, filename + SCREEN_SUFFIX, bitmap,
+                Bitmap.CompressFormat.JPEG, SCREEN_QUALITY);
+        bitmap.recycle();
+
+        return new ImportResult(contentHash, bounds[0], bounds[1]);
+    }
+
+
+    /**
+     * Copies the file pointed by the URI to the internal storage and hashes its content.
+     *
+     * When the provider gives a regular file, it is mapped and the same pages are hashed and
+     * written to the destination channel. Otherwise, as for a pipe, the bytes are copied in
+     * chunks through a single direct buffer.
+     *
+     * @return The SHA-1 of the content, in hexadecimal, or null if the observer cancelled.
+     */
+    private static String copyAndHash(Context context, Uri uri, String filename,
+                                      ImportObserver observer)
+            throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        ParcelFileDescriptor descriptor =
+                context.getContentResolver().openFileDescriptor(uri, "r");
+
+        if (descriptor == null) {
+            throw new FileNotFoundException(uri.toString());
+        }
+
+        FileInputStream input = new FileInputStream(descriptor.getFileDescriptor());
+        FileOutputStream fos = context.openFileOutput(filename, Context.MODE_PRIVATE);
+
+        try {
+            FileChannel source = input.getChannel();
+            FileChannel destination = fos.getChannel();
+            long size = descriptor.getStatSize();
+
+            if (size >= 0) {
+                long position = 0;
+
+                // Mapped in chunks so a large image does not need a large address range
+                while (position < size) {
+                    long length = Math.min(COPY_CHUNK_SIZE, size - position);
+                    MappedByteBuffer mapped =
+                            source.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                    digest.update(mapped.duplicate());
+                    while (mapped.hasRemaining()) {
+                        destination.write(mapped);
+                    }
+
+                    position += length;
+
+                    if (observer != null) {
+                        if (observer.isCancelled()) {
+                            return null;
+                        }
+                        observer.onBytesCopied(position, size);
+                    }
+                }
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE);
+                long copied = 0;
+                int read;
+
+                while ((read = source.read(buffer)) != -1) {
+                    copied += read;
+                    buffer.flip();
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        destination.write(buffer);
+                    }
+                    buffer.clear();
+
+                    if (observer != null) {
+                        if (observer.isCancelled()) {
+                            return null;
+                        }
+                        observer.onBytesCopied(copied, -1);
+                    }
+                }
+            }
+
+            // The copy must survive a crash before the rule can point to it
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+            input.close();
+            descriptor.close();
+        }
+
+        return toHex(digest.digest());
+    }
+
+
+    /**
+     * @return The bytes in lowercase hexadecimal.
+     */
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+
+        return new String(hex);
+    }
+
+
+    /**
+     * Saves the bitmap in the internal storage.
+     *
+     * @return True if the file was written.
+     */
+    private static boolean writeBitmap(Context context, String filename, Bitmap bitmap,
+                                       Bitmap.CompressFormat format, int quality) {
         try {
-            FileOutputStream fos =
-                    context.openFileOutput(filename + "_th", Context.MODE_PRIVATE);
-            thumbnail.compress(Bitmap.CompressFormat.JPEG, 100, fos);
+            FileOutputStream fos = context.openFileOutput(filename, Context.MODE_PRIVATE);
+            bitmap.compress(format, quality, fos);
+            fos.getFD().sync();
             fos.close();
-        } catch (Exception e) {
+        } catch (IOException e) {
             e.printStackTrace();
+            return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Writes the bitmap to a temporary file of the calling thread and renames it, so a reader
+     * never sees a partial file and concurrent writers do not interleave.
+     */
+    private static boolean writeBitmapAtomically(Context context, String filename,
+                                                 Bitmap bitmap, Bitmap.CompressFormat format,
+                                                 int quality) {
+        String temporary = filename + "." + Thread.currentThread().getId() + TEMP_SUFFIX;
+
+        if (!writeBitmap(context, temporary, bitmap, format, quality)) {
+            context.deleteFile(temporary);
+            return false;
+        }
+
+        if (!context.getFileStreamPath(temporary).renameTo(context.getFileStreamPath(filename))) {
+            context.deleteFile(temporary);
+            return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Renders the wallpaper at the size of the system wallpaper, cropped and scaled, and saves
+     * it with "_screen" appended to the name.
+     *
+     * @param context  The current context.
+     * @param filename The name of the original file.
+     * @param size     Size of the system wallpaper, width then height.
+     * @return         The rendered file, or null if the original could not be decoded.
+     */
+    private static File renderScreenVariant(Context context, String filename, int[] size) {
+        File source = context.getFileStreamPath(filename);
+        Bitmap bitmap = decoder.decode(source.getPath(), size[0], size[1]);
+
+        if (bitmap == null) {
+            Log.d(TAG, "Could not render " + filename);
+            return null;
+        }
+
+        // The apply and the preparation may render it at the same time
+        boolean written = writeBitmapAtomically(context, filename + SCREEN_SUFFIX, bitmap,
+                Bitmap.CompressFormat.JPEG, SCREEN_QUALITY);
+        bitmap.recycle();
+
+        if (!written) {
+            return null;
+        }
+
+        return context.getFileStreamPath(filename + SCREEN_SUFFIX);
+    }
+
+
+    /**
+     * Returns the thumbnail of the wallpaper, rendering it if it is missing, as for the
+     * wallpapers imported before the thumbnail existed. The original is decoded subsampled
+     * close to the size of the thumbnail.
+     *
+     * @param context   The current context.
+     * @param filename  The name of the wallpaper.
+     * @param thumbnail The screen displaying the thumbnail.
+     * @return          The thumbnail file, or null if the original could not be decoded.
+     */
+    public static File getThumbnailFile(Context context, String filename, Thumbnail thumbnail) {
+        File file = context.getFileStreamPath(filename + thumbnail.getSuffix());
+        if (file.exists()) {
+            return file;
+        }
+
+        int[] size = thumbnail.getSize(context);
+        Bitmap bitmap = decoder.decode(context.getFileStreamPath(filename).getPath(),
+                size[0], size[1]);
+
+        if (bitmap == null) {
+            return null;
+        }
+
+        // Two loader threads may render the same thumbnail
+        boolean written = writeBitmapAtomically(context, filename + thumbnail.getSuffix(),
+                bitmap, THUMB_FORMAT, THUMB_QUALITY);
+        bitmap.recycle();
+
+        return written ? file : null;
+    }
+
+
+    /**
+     * @param variant The rendered file.
+     * @param size    Size of the system wallpaper, width then height.
+     * @return        True if the file exists and was rendered at this size.
+     */
+    private static boolean isScreenVariantValid(File variant, int[] size) {
+        if (!variant.exists()) {
+            return false;
         }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(variant.getPath(), options);
+
+        return options.outWidth == size[0] && options.outHeight == size[1];
     }
 
 
     /**
-     * @param wallpaper Deletes the wallpaper file and its thumbnail
+     * @param wallpaper Deletes the wallpaper file, its thumbnails and its rendered copy
      */
     public static void deleteWallpaper(Context context, Wallpaper wallpaper) {
+        ImageLoader.getInstance(context).evict(wallpaper.getFilename());
+        context.deleteFile(wallpaper.getFilename() + SCREEN_SUFFIX);
+        context.deleteFile(wallpaper.getFilename() + Thumbnail.EDIT.getSuffix());
+        context.deleteFile(wallpaper.getFilename() + Thumbnail.DEFAULT.getSuffix());
+
         if (context.deleteFile(wallpaper.getFilename()) &&
-                context.deleteFile(wallpaper.getFilename() + "_th")) {
+                context.deleteFile(wallpaper.getFilename() + Thumbnail.LIST.getSuffix())) {
             Log.d(TAG, "Files deleted");
         } else {
             Log.d(TAG, "No file found");
@@ -105,78 +502,115 @@ public class WallpaperHelper {
 
 
     /**
-     * Sets wallpaper on the top of the priority lists or the default if the list is empty.
+     * Sets the winning wallpaper, or the default if no rule is active.
      *
      * This function is used whenever an action can cause the wallpaper to change, such as
-     * setting a new wallpaper, dismissing one or reordering the priority list.
+     * setting a new wallpaper, dismissing one or reordering the priority list. Nothing is done
+     * if the fingerprint of the winner, see WallpaperFingerprint, is the one on the screen.
+     *
+     * @param context    The current context
+     * @param resolution The result of the rule evaluation
      */
-    public static void setOrIgnoreWallpaper(Context context, List<Wallpaper> activeList) {
-
-        String current = getCurrentWallpaperName(context);
-
-        if (activeList.size() > 0) {
-            if (!current.equals(activeList.get(0))) {
-                setWallpaper(context, activeList.get(0));
-            }
-        } else if (!current.equals("default")) {
-            setWallpaper(context, new Wallpaper("default"));
-        }
+    public static void setOrIgnoreWallpaper(Context context, Resolution resolution) {
+        ApplyCoordinator.getInstance(context).applyIfChanged(getFingerprint(context, resolution));
     }
 
     /**
-     * Static method to set the system wallpaper.
-     *
-     * @param context    The current context
-     * @param wallpaper  The wallpaper containing the filename
+     * @param context    The current context.
+     * @param resolution The result of the rule evaluation.
+     * @return           What the winner looks like once applied.
      */
-    public static void setWallpaper(Context context, Wallpaper wallpaper) {
+    public static WallpaperFingerprint getFingerprint(Context context, Resolution resolution) {
+        int[] size = BitmapDecoder.getWallpaperSize(context);
 
-        new SetWallpaper().execute(context, wallpaper);
+        // The default wallpaper has no rule, its hash is in the shared preferences
+        String contentHash = resolution.isDefault()
+                ? getDefaultContentHash(context)
+                : resolution.getRule().getContentHash();
 
-        // Writes the filename to the shared preferences to keep track of the current wallpaper
-        SharedPreferences sharedPreferences = context.getSharedPreferences(
-                context.getString(R.string.shared_preferences_name), Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(context.getString(R.string.current_wallpaper_key),
-                wallpaper.getFilename());
-        editor.apply();
+        return new WallpaperFingerprint(resolution.getFilename(), contentHash, size[0], size[1]);
     }
 
     /**
-     * Static AsyncTask that sets the system wallpaper on the background without hogging the
-     * UI thread.
+     * Renders the copy of the wallpaper at the size of the system wallpaper ahead of its apply,
+     * if it is missing or stale. Nothing is done when it is up to date.
+     *
+     * @param context  The current context.
+     * @param filename The name of the wallpaper file.
+     * @return         True if the rendered copy is ready.
      */
-    private static class SetWallpaper extends AsyncTask<Object, Void, Void> {
-
-        protected Void doInBackground(Object... params) {
+    public static boolean prepareScreenVariant(Context context, String filename) {
+        return getScreenVariant(context, filename) != null;
+    }
 
-            Context context = (Context) params[0];
-            Wallpaper wallpaper = (Wallpaper) params[1];
+    /**
+     * Returns the copy of the wallpaper rendered at the size of the system wallpaper.
+     *
+     * It is rendered again only if it is missing, as for the files imported by older
+     * versions, or if the size of the system wallpaper changed.
+     *
+     * @param context  The current context.
+     * @param filename The name of the wallpaper file.
+     * @return         The rendered file, or null if the wallpaper could not be decoded.
+     */
+    static File getScreenVariant(Context context, String filename) {
+        int[] size = BitmapDecoder.getWallpaperSize(context);
+        File file = context.getFileStreamPath(filename + SCREEN_SUFFIX);
 
-            File file = context.getFileStreamPath(wallpaper.getFilename());
+        if (!isScreenVariantValid(file, size)) {
+            file = renderScreenVariant(context, filename, size);
+        }
 
-            Bitmap wallpaperImage = BitmapFactory.decodeFile(file.getPath());
+        return file;
+    }
 
+    /**
+     * Streams the rendered copy to the WallpaperManager, so no bitmap is created in our
+     * process.
+     *
+     * @param context The current context.
+     * @param file    The rendered copy of the wallpaper.
+     * @return        True if the system wallpaper was set.
+     */
+    static boolean streamToSystem(Context context, File file) {
+        try {
+            InputStream input = new FileInputStream(file);
             try {
-                WallpaperManager.getInstance(context.getApplicationContext()).
-                        setBitmap(wallpaperImage);
-            } catch (IOException e){
-                e.printStackTrace();
+                WallpaperManager.getInstance(context.getApplicationContext()).setStream(input);
+            } finally {
+                input.close();
             }
-
-            return null;
+        } catch (IOException e){
+            e.printStackTrace();
+            return false;
         }
+
+        return true;
+    }
+
+    /**
+     * Saves the content hash of the default wallpaper, which has no row in the database.
+     *
+     * @param context     The current context.
+     * @param contentHash The hash returned by the import.
+     */
+    public static void setDefaultContentHash(Context context, String contentHash) {
+        SharedPreferences sharedPreferences = context.getSharedPreferences(
+                context.getString(R.string.shared_preferences_name), Context.MODE_PRIVATE);
+        sharedPreferences.edit()
+                .putString(context.getString(R.string.default_hash_key), contentHash)
+                .apply();
     }
 
+
     /**
-     * @param context The current context
-     * @return        The filename of the current wallpaper
+     * @param context The current context.
+     * @return        The content hash of the default wallpaper, or null if it is not known.
      */
-    public static String getCurrentWallpaperName(Context context) {
+    public static String getDefaultContentHash(Context context) {
         SharedPreferences sharedPreferences = context.getSharedPreferences(
                 context.getString(R.string.shared_preferences_name), Context.MODE_PRIVATE);
-        return sharedPreferences.getString(context.getString(R.string.current_wallpaper_key),
-                "no entry");
+        return sharedPreferences.getString(context.getString(R.string.default_hash_key), null);
     }
 
 
@@ -0,0 +1,241 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.utils;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.barbedo.dwall.data.Wallpaper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Imports the images selected in the gallery out of the UI thread.
+ *
+ * The imports run one at a time on a single background thread, the copy and the decoding of
+ * a large image are too heavy to be done concurrently. Each import returns a handle that can
+ * cancel it, and the listener is called on the main thread.
+ *
+ * @author Ricardo Barbedo
+ */
+public class WallpaperImporter {
+
+    private static final String TAG = WallpaperImporter.class.getSimpleName();
+
+    // Part of the progress given to the copy, the rest is the decoding
+    private static final int COPY_PROGRESS = 80;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Receives the state of an import, on the main thread.
+     * No method is called after the import is cancelled.
+     */
+    public interface Listener {
+
+        /**
+         * @param percent Progress of the import, or -1 if the size of the image is not known.
+         */
+        void onProgress(int percent);
+
+        /**
+         * The thumbnails, see WallpaperHelper.Thumbnail, can be displayed.
+         *
+         * @param filename The name of the imported file.
+         */
+        void onThumbnailReady(String filename);
+
+        /**
+         * Every file of the import was written and synced to the disk.
+         *
+         * @param filename The name of the imported file.
+         * @param result   The hash and the bounds of the image.
+         */
+        void onComplete(String filename, WallpaperHelper.ImportResult result);
+
+        /**
+         * @param filename The name of the file that could not be imported.
+         */
+        void onFailed(String filename);
+    }
+
+    /**
+     * Handle of a running import.
+     */
+    public static class Handle implements WallpaperHelper.ImportObserver {
+
+        private final Context context;
+        private final String filename;
+        private final Listener listener;
+        private volatile boolean cancelled;
+        private boolean finished;
+        private int lastPercent = -2;
+
+        private Handle(Context context, String filename, Listener listener) {
+            this.context = context;
+            this.filename = filename;
+            this.listener = listener;
+        }
+
+        /**
+         * Stops the import at its next step and deletes its files, also when it already
+         * completed, so the handle must be dropped once the import is used.
+         * The listener is not called anymore.
+         */
+        public synchronized void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+
+            // The files were already written, they are deleted before any later import
+            if (finished) {
+                deleteInBackground(context, filename);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void onBytesCopied(long copied, long total) {
+            int percent = total > 0 ? (int) (COPY_PROGRESS * copied / total) : -1;
+
+            // Only posts when the displayed value changes
+            if (percent != lastPercent) {
+                lastPercent = percent;
+                postProgress(percent);
+            }
+        }
+
+        @Override
+        public void onThumbnailReady() {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onThumbnailReady(filename);
+                }
+            });
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        private void postProgress(final int percent) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onProgress(percent);
+                }
+            });
+        }
+
+        private void post(final Runnable runnable) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled) {
+                        runnable.run();
+                    }
+                }
+            });
+        }
+    }
+
+    private WallpaperImporter() {
+    }
+
+    /**
+     * Starts the import of the image to the internal storage.
+     *
+     * @param context  The current context.
+     * @param uri      The image selected in the gallery.
+     * @param filename The name of the file to save.
+     * @param listener Receives the state of the import on the main thread.
+     * @return         The handle to cancel the import.
+     */
+    public static Handle importWallpaper(Context context, final Uri uri, final String filename,
+                                         final Listener listener) {
+        final Context appContext = context.getApplicationContext();
+        final Handle handle = new Handle(appContext, filename, listener);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (handle.isCancelled()) {
+                    return;
+                }
+
+                WallpaperHelper.ImportResult imported;
+                try {
+                    imported = WallpaperHelper.copyWallpaperToStorage(appContext, uri, filename,
+                            handle);
+                } catch (RuntimeException e) {
+                    // As a SecurityException from the provider, the listener must still be told
+                    Log.e(TAG, "Import of " + filename + " failed", e);
+                    WallpaperHelper.deleteWallpaper(appContext, new Wallpaper(filename));
+                    imported = null;
+                } catch (OutOfMemoryError e) {
+                    Log.e(TAG, "Import of " + filename + " failed", e);
+                    WallpaperHelper.deleteWallpaper(appContext, new Wallpaper(filename));
+                    imported = null;
+                }
+                final WallpaperHelper.ImportResult result = imported;
+
+                synchronized (handle) {
+                    if (handle.isCancelled()) {
+                        Log.d(TAG, "Import of " + filename + " cancelled");
+                        WallpaperHelper.deleteWallpaper(appContext, new Wallpaper(filename));
+                        return;
+                    }
+                    handle.finished = true;
+                }
+
+                handle.postProgress(100);
+                handle.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (result != null) {
+                            listener.onComplete(filename, result);
+                        } else {
+                            listener.onFailed(filename);
+                        }
+                    }
+                });
+            }
+        });
+
+        return handle;
+    }
+
+    private static void deleteInBackground(final Context context, final String filename) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                WallpaperHelper.deleteWallpaper(context, new Wallpaper(filename));
+            }
+        });
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.barbedo.dwall.data;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of the hours of the week of the WifiHistory and of the prediction of its summary.
+ *
+ * @author Ricardo Barbedo
+ */
+public class WifiHistoryTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private static long time(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void slotStartsOnSundayAtMidnight() {
+        // 2016-01-03 is a Sunday
+        assertEquals(0, WifiHistory.getSlot(time(2016, Calendar.JANUARY, 3, 0, 0), UTC));
+        assertEquals(23, WifiHistory.getSlot(time(2016, Calendar.JANUARY, 3, 23, 59), UTC));
+        assertEquals(24 + 9, WifiHistory.getSlot(time(2016, Calendar.JANUARY, 4, 9, 30), UTC));
+        assertEquals(ConnectionCounts.HOURS_PER_WEEK - 1,
+                WifiHistory.getSlot(time(2016, Calendar.JANUARY, 9, 23, 0), UTC));
+    }
+
+    @Test
+    public void slotUsesTimeZone() {
+        long sundayMidnight = time(2016, Calendar.JANUARY, 3, 0, 0);
+
+        assertEquals(2, WifiHistory.getSlot(sundayMidnight, TimeZone.getTimeZone("GMT+02:00")));
+        assertEquals(ConnectionCounts.HOURS_PER_WEEK - 1,
+                WifiHistory.getSlot(sundayMidnight, TimeZone.getTimeZone("GMT-01:00")));
+    }
+
+    @Test
+    public void predictNeedsEnoughConnections() {
+        ConnectionCounts counts = new ConnectionCounts();
+        counts.count("work", 33, 1);
+
+        assertNull(counts.predict(33, "home"));
+
+        counts.count("work", 33, 1);
+        assertEquals("work", counts.predict(33, "home"));
+    }
+
+    @Test
+    public void predictCountsCurrentAndNextHour() {
+        ConnectionCounts counts = new ConnectionCounts();
+        counts.count("work", 33, 1);
+        counts.count("work", 34, 1);
+        counts.count("gym", 35, 1);
+        counts.count("gym", 35, 1);
+        counts.count("gym", 35, 1);
+
+        assertEquals("work", counts.predict(33, "home"));
+        assertEquals("gym", counts.predict(34, "home"));
+        assertNull(counts.predict(36, "home"));
+    }
+
+    @Test
+    public void predictWrapsToStartOfWeek() {
+        ConnectionCounts counts = new ConnectionCounts();
+        counts.count("home", 0, 1);
+        counts.count("home", 0, 1);
+
+        assertEquals("home", counts.predict(ConnectionCounts.HOURS_PER_WEEK - 1, "work"));
+    }
+
+    @Test
+    public void predictSkipsCurrentNetwork() {
+        ConnectionCounts counts = new ConnectionCounts();
+        counts.count("work", 33, 1);
+        counts.count("work", 33, 1);
+        counts.count("work", 33, 1);
+        counts.count("cafe", 33, 1);
+        counts.count("cafe", 33, 1);
+
+        assertEquals("cafe", counts.predict(33, "work"));
+    }
+
+    @Test
+    public void deletedConnectionsRemoveNetwork() {
+        ConnectionCounts counts = new ConnectionCounts();
+        counts.count("work", 33, 1);
+        counts.count("work", 34, 1);
+
+        counts.count("work", 33, -1);
+        assertEquals(1, counts.size());
+
+        counts.count("work", 34, -1);
+        assertEquals(0, counts.size());
+        assertNull(counts.predict(33, null));
+    }
+}
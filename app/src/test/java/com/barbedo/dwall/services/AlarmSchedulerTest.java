@@ -0,0 +1,77 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.barbedo.dwall.services;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the time of the alarm armed for a transition.
+ *
+ * @author Ricardo Barbedo
+ */
+public class AlarmSchedulerTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private static long time(TimeZone timeZone, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.clear();
+        calendar.set(2016, Calendar.MARCH, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void laterMinuteIsToday() {
+        long now = time(UTC, 10, 8, 15);
+
+        assertEquals(time(UTC, 10, 12, 0), AlarmScheduler.getTriggerTime(12 * 60, now, UTC));
+    }
+
+    @Test
+    public void earlierMinuteIsTomorrow() {
+        long now = time(UTC, 10, 22, 0);
+
+        assertEquals(time(UTC, 11, 6, 30), AlarmScheduler.getTriggerTime(6 * 60 + 30, now, UTC));
+    }
+
+    @Test
+    public void currentMinuteIsTomorrow() {
+        long now = time(UTC, 10, 12, 0);
+
+        assertEquals(time(UTC, 11, 12, 0), AlarmScheduler.getTriggerTime(12 * 60, now, UTC));
+    }
+
+    @Test
+    public void secondsOfCurrentTimeAreIgnored() {
+        long now = time(UTC, 10, 11, 59) + 30 * 1000;
+
+        assertEquals(time(UTC, 10, 12, 0), AlarmScheduler.getTriggerTime(12 * 60, now, UTC));
+    }
+
+    @Test
+    public void minuteIsInTimeZoneOfRules() {
+        TimeZone zone = TimeZone.getTimeZone("GMT+05:30");
+        long now = time(zone, 10, 8, 0);
+
+        assertEquals(time(zone, 10, 9, 0), AlarmScheduler.getTriggerTime(9 * 60, now, zone));
+        assertEquals(time(UTC, 10, 3, 30), AlarmScheduler.getTriggerTime(9 * 60, now, zone));
+    }
+}
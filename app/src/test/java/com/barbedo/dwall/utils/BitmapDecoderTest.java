@@ -0,0 +1,59 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.barbedo.dwall.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the sample size used to decode the wallpapers.
+ *
+ * @author Ricardo Barbedo
+ */
+public class BitmapDecoderTest {
+
+    @Test
+    public void smallImageIsNotSampled() {
+        assertEquals(1, BitmapDecoder.computeSampleSize(1080, 1920, 1080, 1920));
+        assertEquals(1, BitmapDecoder.computeSampleSize(800, 600, 1080, 1920));
+    }
+
+    @Test
+    public void sampledImageIsAtLeastTheTarget() {
+        assertEquals(2, BitmapDecoder.computeSampleSize(2160, 3840, 1080, 1920));
+        assertEquals(2, BitmapDecoder.computeSampleSize(3000, 4000, 1080, 1920));
+        assertEquals(4, BitmapDecoder.computeSampleSize(4320, 7680, 1080, 1920));
+    }
+
+    @Test
+    public void smallerDimensionLimitsTheSampling() {
+        // Wide panorama, its height is barely the target
+        assertEquals(1, BitmapDecoder.computeSampleSize(12000, 2000, 1080, 1920));
+        assertEquals(2, BitmapDecoder.computeSampleSize(12000, 4000, 1080, 1920));
+    }
+
+    @Test
+    public void sampleSizeIsPowerOfTwo() {
+        for (int width = 100; width < 10000; width += 97) {
+            int sampleSize = BitmapDecoder.computeSampleSize(width, width * 2, 300, 600);
+
+            assertEquals(0, sampleSize & (sampleSize - 1));
+            assertTrue(sampleSize == 1 || width / sampleSize >= 300);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.barbedo.dwall.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of the fingerprints: comparison and the saved format.
+ *
+ * @author Ricardo Barbedo
+ */
+public class WallpaperFingerprintTest {
+
+    @Test
+    public void parseReadsToString() {
+        WallpaperFingerprint fingerprint = new WallpaperFingerprint("home", "ab12", 1080, 1920);
+        WallpaperFingerprint parsed = WallpaperFingerprint.parse(fingerprint.toString());
+
+        assertEquals(fingerprint, parsed);
+        assertEquals(fingerprint.hashCode(), parsed.hashCode());
+        assertEquals("home", parsed.getFilename());
+        assertEquals("ab12", parsed.getContentHash());
+        assertEquals(1080, parsed.getWidth());
+        assertEquals(1920, parsed.getHeight());
+    }
+
+    @Test
+    public void parseKeepsUnknownHash() {
+        WallpaperFingerprint fingerprint = new WallpaperFingerprint("default", null, 720, 1280);
+        WallpaperFingerprint parsed = WallpaperFingerprint.parse(fingerprint.toString());
+
+        assertEquals(fingerprint, parsed);
+        assertNull(parsed.getContentHash());
+    }
+
+    @Test
+    public void parseRejectsMalformedValues() {
+        assertNull(WallpaperFingerprint.parse(null));
+        assertNull(WallpaperFingerprint.parse(""));
+        assertNull(WallpaperFingerprint.parse("home|ab12|1080"));
+        assertNull(WallpaperFingerprint.parse("home|ab12|1080|1920|0"));
+        assertNull(WallpaperFingerprint.parse("home|ab12|wide|1920"));
+    }
+
+    @Test
+    public void anyDifferenceMakesFingerprintsDifferent() {
+        WallpaperFingerprint fingerprint = new WallpaperFingerprint("home", "ab12", 1080, 1920);
+
+        assertFalse(fingerprint.equals(new WallpaperFingerprint("work", "ab12", 1080, 1920)));
+        assertFalse(fingerprint.equals(new WallpaperFingerprint("home", "cd34", 1080, 1920)));
+        assertFalse(fingerprint.equals(new WallpaperFingerprint("home", null, 1080, 1920)));
+        assertFalse(fingerprint.equals(new WallpaperFingerprint("home", "ab12", 1920, 1080)));
+        assertFalse(new WallpaperFingerprint("home", null, 1080, 1920).equals(fingerprint));
+        assertFalse(fingerprint.equals(null));
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.benchmark;
+
+import com.barbedo.dwall.engine.Resolution;
+import com.barbedo.dwall.engine.Rule;
+import com.barbedo.dwall.engine.RuleIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one trigger: finding the wallpaper to display for a network and a time of day.
+ *
+ * The steady state benchmarks measure a warmed up evaluation, the single shot ones measure a
+ * cold evaluation, as done by a service started for a single broadcast or alarm, and the cost
+ * of compiling the index after the rules are edited. The legacy benchmarks run the linear scan
+ * of the first version of the app on the same rules.
+ *
+ * @author Ricardo Barbedo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+    @Param({"5", "50", "500", "10000"})
+    int ruleCount;
+
+    private List<Rule> rules;
+    private RuleIndex index;
+    private List<LegacyEvaluator.LegacyRule> legacyRules;
+    private String[] ssids;
+    private int[] minutes;
+    private Date[] dates;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        rules = RuleSets.createRules(ruleCount);
+        index = new RuleIndex(rules);
+        legacyRules = RuleSets.toLegacy(rules);
+        ssids = RuleSets.createSsids(ruleCount);
+        minutes = RuleSets.createMinutes();
+
+        dates = new Date[minutes.length];
+        Calendar calendar = Calendar.getInstance();
+        for (int i = 0; i < minutes.length; i++) {
+            calendar.set(Calendar.HOUR_OF_DAY, minutes[i] / 60);
+            calendar.set(Calendar.MINUTE, minutes[i] % 60);
+            dates[i] = calendar.getTime();
+        }
+    }
+
+    @Benchmark
+    public Resolution resolve() {
+        int i = nextInput();
+        return index.resolve(ssids[i], minutes[i]);
+    }
+
+    @Benchmark
+    public List<LegacyEvaluator.LegacyRule> legacyActiveList() {
+        int i = nextInput();
+        return LegacyEvaluator.getActiveList(legacyRules, ssids[i], dates[i]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 20)
+    public Resolution resolveSingleShot() {
+        int i = nextInput();
+        return index.resolve(ssids[i], minutes[i]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 20)
+    public List<LegacyEvaluator.LegacyRule> legacyActiveListSingleShot() {
+        int i = nextInput();
+        return LegacyEvaluator.getActiveList(legacyRules, ssids[i], dates[i]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 20)
+    public RuleIndex buildIndexSingleShot() {
+        return new RuleIndex(rules);
+    }
+
+    private int nextInput() {
+        next = (next + 1) & (RuleSets.INPUT_COUNT - 1);
+        return next;
+    }
+}
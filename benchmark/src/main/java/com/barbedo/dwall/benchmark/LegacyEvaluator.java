@@ -0,0 +1,127 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.benchmark;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Copy of the evaluation done by the first version of WallpaperData.getActiveWallpaperList,
+ * without the Android and logging calls. Kept as the baseline of the benchmarks.
+ *
+ * @author Ricardo Barbedo
+ */
+final class LegacyEvaluator {
+
+    /**
+     * Rule as stored by the first version of the database.
+     */
+    static final class LegacyRule {
+        final String mode;
+        final String info;
+
+        LegacyRule(String mode, String info) {
+            this.mode = mode;
+            this.info = info;
+        }
+    }
+
+    private LegacyEvaluator() {
+    }
+
+    /**
+     * Scans every rule, like getActiveWallpaperList did.
+     *
+     * @param rules    The rules, ordered by priority.
+     * @param wifiName Name of the current network.
+     * @param now      Current time.
+     * @return         The active rules, ordered by priority.
+     */
+    static List<LegacyRule> getActiveList(List<LegacyRule> rules, String wifiName, Date now) {
+        List<LegacyRule> activeList = new ArrayList<LegacyRule>();
+
+        for (LegacyRule rule : rules) {
+
+            if (rule.mode.equals("Wi-Fi") && rule.info.equals(wifiName)) {
+                activeList.add(rule);
+            }
+
+            if (rule.mode.equals("Time")) {
+                String[] times = rule.info.split("\\s+");
+                SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm");
+                String currentTime = dateFormat.format(now);
+                boolean isInInterval = false;
+
+                try {
+                    isInInterval = isTimeInInterval(times[0], times[1], currentTime);
+                } catch (ParseException e) {
+                    e.printStackTrace();
+                }
+
+                if (isInInterval) {
+                    activeList.add(rule);
+                }
+            }
+        }
+
+        return activeList;
+    }
+
+    /**
+     * The original interval check, with three SimpleDateFormat and three Calendar instances.
+     */
+    static boolean isTimeInInterval(String argStartTime,
+                                    String argEndTime,
+                                    String argCurrentTime) throws ParseException {
+        Date startTime = new SimpleDateFormat("HH:mm").parse(argStartTime);
+        Calendar startCalendar = Calendar.getInstance();
+        startCalendar.setTime(startTime);
+
+        Date currentTime = new SimpleDateFormat("HH:mm").parse(argCurrentTime);
+        Calendar currentCalendar = Calendar.getInstance();
+        currentCalendar.setTime(currentTime);
+
+        Date endTime = new SimpleDateFormat("HH:mm").parse(argEndTime);
+        Calendar endCalendar = Calendar.getInstance();
+        endCalendar.setTime(endTime);
+
+        if (currentTime.compareTo(endTime) < 0) {
+            currentCalendar.add(Calendar.DATE, 1);
+            currentTime = currentCalendar.getTime();
+        }
+
+        if (startTime.compareTo(endTime) < 0) {
+            startCalendar.add(Calendar.DATE, 1);
+            startTime = startCalendar.getTime();
+        }
+
+        if (currentTime.before(startTime)) {
+            return false;
+        }
+
+        if (currentTime.after(endTime)) {
+            endCalendar.add(Calendar.DATE, 1);
+            endTime = endCalendar.getTime();
+        }
+
+        return currentTime.before(endTime);
+    }
+}
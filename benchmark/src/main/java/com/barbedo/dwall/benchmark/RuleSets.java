@@ -0,0 +1,120 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.benchmark;
+
+import com.barbedo.dwall.engine.Rule;
+import com.barbedo.dwall.engine.TimeWindow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the rule sets and the inputs used by the benchmarks.
+ *
+ * Half of the rules are Wi-Fi rules and half are time rules with random windows. The seed is
+ * fixed so every run measures the same data.
+ *
+ * @author Ricardo Barbedo
+ */
+final class RuleSets {
+
+    // Number of inputs cycled through by the benchmarks, a power of two
+    static final int INPUT_COUNT = 1024;
+
+    private static final long SEED = 42;
+
+    private RuleSets() {
+    }
+
+    /**
+     * @param ruleCount Number of rules.
+     * @return          The rules, ordered by priority.
+     */
+    static List<Rule> createRules(int ruleCount) {
+        Random random = new Random(SEED);
+        List<Rule> rules = new ArrayList<Rule>(ruleCount);
+
+        for (int i = 0; i < ruleCount; i++) {
+            if (i % 2 == 0) {
+                rules.add(Rule.wifi(i, ssid(i), "wallpaper" + i, null));
+            } else {
+                TimeWindow window = new TimeWindow(random.nextInt(TimeWindow.MINUTES_PER_DAY),
+                        random.nextInt(TimeWindow.MINUTES_PER_DAY));
+                rules.add(Rule.time(i, window, "wallpaper" + i, null));
+            }
+        }
+
+        return rules;
+    }
+
+    /**
+     * Converts the rules to the mode and info strings stored by the first version of the app.
+     *
+     * @param rules The rules.
+     * @return      The legacy representation, ordered by priority.
+     */
+    static List<LegacyEvaluator.LegacyRule> toLegacy(List<Rule> rules) {
+        List<LegacyEvaluator.LegacyRule> legacyRules =
+                new ArrayList<LegacyEvaluator.LegacyRule>(rules.size());
+
+        for (Rule rule : rules) {
+            if (rule.getMode() == Rule.MODE_WIFI) {
+                legacyRules.add(new LegacyEvaluator.LegacyRule("Wi-Fi", rule.getSsid()));
+            } else {
+                legacyRules.add(new LegacyEvaluator.LegacyRule("Time",
+                        rule.getWindow().toString()));
+            }
+        }
+
+        return legacyRules;
+    }
+
+    /**
+     * @param ruleCount Number of rules, half of the networks match a rule.
+     * @return          Network names to evaluate.
+     */
+    static String[] createSsids(int ruleCount) {
+        Random random = new Random(SEED + 1);
+        String[] ssids = new String[INPUT_COUNT];
+
+        for (int i = 0; i < INPUT_COUNT; i++) {
+            ssids[i] = random.nextBoolean() ? ssid(2 * random.nextInt((ruleCount + 1) / 2))
+                    : "unknown" + i;
+        }
+
+        return ssids;
+    }
+
+    /**
+     * @return Minutes of the day to evaluate.
+     */
+    static int[] createMinutes() {
+        Random random = new Random(SEED + 2);
+        int[] minutes = new int[INPUT_COUNT];
+
+        for (int i = 0; i < INPUT_COUNT; i++) {
+            minutes[i] = random.nextInt(TimeWindow.MINUTES_PER_DAY);
+        }
+
+        return minutes;
+    }
+
+    private static String ssid(int i) {
+        return "network" + i;
+    }
+}
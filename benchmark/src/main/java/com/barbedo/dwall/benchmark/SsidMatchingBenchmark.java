@@ -0,0 +1,90 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.benchmark;
+
+import com.barbedo.dwall.engine.Rule;
+import com.barbedo.dwall.engine.RuleIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding the Wi-Fi rule of a network, with the hash index of the engine and with
+ * the string comparison of every rule done by the first version of the app.
+ *
+ * @author Ricardo Barbedo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SsidMatchingBenchmark {
+
+    @Param({"5", "50", "500", "10000"})
+    int ruleCount;
+
+    private RuleIndex index;
+    private List<LegacyEvaluator.LegacyRule> legacyRules;
+    private String[] ssids;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<Rule> rules = RuleSets.createRules(ruleCount);
+        index = new RuleIndex(rules);
+        legacyRules = RuleSets.toLegacy(rules);
+        ssids = RuleSets.createSsids(ruleCount);
+    }
+
+    @Benchmark
+    public Rule indexLookup() {
+        return index.getWifiWinner(ssids[nextInput()]);
+    }
+
+    @Benchmark
+    public int legacyScan() {
+        String ssid = ssids[nextInput()];
+        int matches = 0;
+
+        for (LegacyEvaluator.LegacyRule rule : legacyRules) {
+            if (rule.mode.equals("Wi-Fi") && rule.info.equals(ssid)) {
+                matches++;
+            }
+        }
+
+        return matches;
+    }
+
+    private int nextInput() {
+        next = (next + 1) & (RuleSets.INPUT_COUNT - 1);
+        return next;
+    }
+}
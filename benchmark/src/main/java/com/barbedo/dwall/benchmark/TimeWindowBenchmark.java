@@ -0,0 +1,114 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.benchmark;
+
+import com.barbedo.dwall.engine.Rule;
+import com.barbedo.dwall.engine.TimeWindow;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the time window math: checking if a time is in a window and finding the current
+ * time of day, with the minute arithmetic of the engine and with the original implementation.
+ *
+ * @author Ricardo Barbedo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeWindowBenchmark {
+
+    private TimeWindow[] windows;
+    private String[] startTimes;
+    private String[] endTimes;
+    private String[] currentTimes;
+    private int[] minutes;
+    private TimeZone timeZone;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<Rule> rules = RuleSets.createRules(2 * RuleSets.INPUT_COUNT);
+        minutes = RuleSets.createMinutes();
+        windows = new TimeWindow[RuleSets.INPUT_COUNT];
+        startTimes = new String[RuleSets.INPUT_COUNT];
+        endTimes = new String[RuleSets.INPUT_COUNT];
+        currentTimes = new String[RuleSets.INPUT_COUNT];
+
+        for (int i = 0; i < RuleSets.INPUT_COUNT; i++) {
+            windows[i] = rules.get(2 * i + 1).getWindow();
+            String[] times = windows[i].toString().split(" ");
+            startTimes[i] = times[0];
+            endTimes[i] = times[1];
+            currentTimes[i] = String.format("%02d:%02d", minutes[i] / 60, minutes[i] % 60);
+        }
+
+        timeZone = TimeZone.getDefault();
+    }
+
+    @Benchmark
+    public boolean contains() {
+        int i = nextInput();
+        return windows[i].contains(minutes[i]);
+    }
+
+    @Benchmark
+    public boolean legacyIsTimeInInterval() throws ParseException {
+        int i = nextInput();
+        return LegacyEvaluator.isTimeInInterval(startTimes[i], endTimes[i], currentTimes[i]);
+    }
+
+    @Benchmark
+    public int minuteOfDay() {
+        return TimeWindow.minuteOfDay(System.currentTimeMillis(), timeZone);
+    }
+
+    @Benchmark
+    public int calendarMinuteOfDay() {
+        Calendar now = Calendar.getInstance();
+        return now.get(Calendar.HOUR_OF_DAY) * 60 + now.get(Calendar.MINUTE);
+    }
+
+    @Benchmark
+    public TimeWindow parse() {
+        int i = nextInput();
+        return TimeWindow.parse(startTimes[i] + " " + endTimes[i]);
+    }
+
+    private int nextInput() {
+        next = (next + 1) & (RuleSets.INPUT_COUNT - 1);
+        return next;
+    }
+}
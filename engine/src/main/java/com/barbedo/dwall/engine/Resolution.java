@@ -0,0 +1,93 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.engine;
+
+/**
+ * Result of the rule evaluation: the rule whose wallpaper must be displayed and why it won.
+ *
+ * @author Ricardo Barbedo
+ */
+public class Resolution {
+
+    /**
+     * Why the wallpaper was chosen.
+     */
+    public enum Reason {
+        // The current network matches a Wi-Fi rule
+        WIFI,
+        // The current time is in the window of a time rule
+        TIME,
+        // No rule is active
+        DEFAULT
+    }
+
+    // Name of the default wallpaper file
+    public static final String DEFAULT_FILENAME = "default";
+
+    public static final Resolution DEFAULT = new Resolution(
+            new Rule(-1, Rule.MODE_NONE, null, null, DEFAULT_FILENAME, null), Reason.DEFAULT);
+
+    private final Rule rule;
+    private final Reason reason;
+
+    /**
+     * Constructor.
+     *
+     * @param rule   The winning rule.
+     * @param reason Why it won.
+     */
+    public Resolution(Rule rule, Reason reason) {
+        this.rule = rule;
+        this.reason = reason;
+    }
+
+    /**
+     * @return The winning rule.
+     */
+    public Rule getRule() {
+        return rule;
+    }
+
+    /**
+     * @return The name of the wallpaper file to display.
+     */
+    public String getFilename() {
+        return rule.getFilename();
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * @return True if no rule is active and the default wallpaper must be displayed.
+     */
+    public boolean isDefault() {
+        return reason == Reason.DEFAULT;
+    }
+
+    public String toString() {
+        switch (reason) {
+            case WIFI:
+                return "Wi-Fi " + rule.getSsid() + " matched rule " + rule.toString();
+            case TIME:
+                return "Time " + rule.getWindow() + " matched rule " + rule.toString();
+            default:
+                return "No active rule, default wallpaper";
+        }
+    }
+}
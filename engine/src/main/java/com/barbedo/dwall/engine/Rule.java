@@ -0,0 +1,109 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.engine;
+
+/**
+ * Immutable rule evaluated by the engine.
+ *
+ * A rule displays its wallpaper file when the device is connected to its network (Wi-Fi mode)
+ * or when the current time is in its window (time mode). When several rules are active, the
+ * one with the lowest position wins.
+ *
+ * @author Ricardo Barbedo
+ */
+public class Rule {
+
+    public static final int MODE_NONE = 0;
+    public static final int MODE_WIFI = 1;
+    public static final int MODE_TIME = 2;
+
+    private final int position;
+    private final int mode;
+    private final String ssid;
+    private final TimeWindow window;
+    private final String filename;
+    private final String contentHash;
+
+    /**
+     * Constructor.
+     *
+     * @param position    Priority of the rule, lower is higher priority.
+     * @param mode        MODE_WIFI, MODE_TIME or MODE_NONE.
+     * @param ssid        Network name of a Wi-Fi rule, null otherwise.
+     * @param window      Window of a time rule, null otherwise.
+     * @param filename    Name of the wallpaper file.
+     * @param contentHash Hash of the wallpaper file contents, or null if it is not known.
+     */
+    public Rule(int position, int mode, String ssid, TimeWindow window,
+                String filename, String contentHash) {
+        this.position = position;
+        this.mode = mode;
+        this.ssid = ssid;
+        this.window = window;
+        this.filename = filename;
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Creates a Wi-Fi rule.
+     */
+    public static Rule wifi(int position, String ssid, String filename, String contentHash) {
+        return new Rule(position, MODE_WIFI, ssid, null, filename, contentHash);
+    }
+
+    /**
+     * Creates a time rule.
+     */
+    public static Rule time(int position, TimeWindow window, String filename, String contentHash) {
+        return new Rule(position, MODE_TIME, null, window, filename, contentHash);
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public String getSsid() {
+        return ssid;
+    }
+
+    public TimeWindow getWindow() {
+        return window;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String toString() {
+        switch (mode) {
+            case MODE_WIFI:
+                return position + " Wi-Fi " + ssid + " " + filename;
+            case MODE_TIME:
+                return position + " Time " + window + " " + filename;
+            default:
+                return position + " " + filename;
+        }
+    }
+}
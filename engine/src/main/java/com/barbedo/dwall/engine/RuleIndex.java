@@ -0,0 +1,269 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Compiled form of a rule set and its evaluator.
+ *
+ * The Wi-Fi rules are indexed by their network name and the time rules are split in segments
+ * of the day, delimited by the start and end times of all the rules. Inside a segment the set
+ * of active time rules does not change, so only its winner is computed when the index is built
+ * and found later with a binary search on the segment boundaries.
+ *
+ * The result of every winner is created once, with the index, so a resolution allocates
+ * nothing. The index is never modified after being built, so it can be shared between threads.
+ *
+ * @author Ricardo Barbedo
+ */
+public class RuleIndex {
+
+    public static final RuleIndex EMPTY = new RuleIndex(Collections.<Rule>emptyList());
+
+    // Orders the rules by their priority
+    private static final Comparator<Rule> POSITION_ORDER = new Comparator<Rule>() {
+        @Override
+        public int compare(Rule lhs, Rule rhs) {
+            return lhs.getPosition() < rhs.getPosition() ? -1
+                    : (lhs.getPosition() == rhs.getPosition() ? 0 : 1);
+        }
+    };
+
+    private final List<Rule> rules;
+
+    // Result of the highest priority Wi-Fi rule of each network
+    private final Map<String, Resolution> wifiWinners;
+
+    // Start of each segment in minutes of the day, the first one is always 0
+    private final int[] boundaries;
+
+    // Result of the highest priority time rule of each segment, null if none is active
+    private final Resolution[] timeWinners;
+
+    // Boundaries where the highest priority time rule changes, the only ones needing an alarm
+    private final int[] transitions;
+
+    /**
+     * Builds the index.
+     *
+     * @param rules The rule set, in any order. Time rules without a window are ignored.
+     */
+    public RuleIndex(List<Rule> rules) {
+        List<Rule> sorted = new ArrayList<Rule>(rules);
+        Collections.sort(sorted, POSITION_ORDER);
+        this.rules = Collections.unmodifiableList(sorted);
+
+        Map<String, Resolution> wifiMap = new HashMap<String, Resolution>();
+        List<Rule> timeList = new ArrayList<Rule>();
+        TreeSet<Integer> boundarySet = new TreeSet<Integer>();
+        boundarySet.add(0);
+
+        for (Rule rule : sorted) {
+            if (rule.getMode() == Rule.MODE_WIFI) {
+                // The rules are sorted, the first one of a network wins
+                if (!wifiMap.containsKey(rule.getSsid())) {
+                    wifiMap.put(rule.getSsid(), new Resolution(rule, Resolution.Reason.WIFI));
+                }
+
+            } else if (rule.getMode() == Rule.MODE_TIME && rule.getWindow() != null) {
+                boundarySet.add(rule.getWindow().getStart());
+                boundarySet.add(rule.getWindow().getEnd());
+                timeList.add(rule);
+            }
+        }
+
+        this.wifiWinners = wifiMap;
+
+        this.boundaries = new int[boundarySet.size()];
+        int i = 0;
+        for (int boundary : boundarySet) {
+            boundaries[i++] = boundary;
+        }
+
+        this.timeWinners = findTimeWinners(boundaries, timeList);
+
+        // A segment is compared with the previous one, the first one with the last of the day
+        int[] found = new int[boundaries.length];
+        int count = 0;
+        for (i = 0; i < boundaries.length; i++) {
+            int previous = i == 0 ? boundaries.length - 1 : i - 1;
+            if (timeWinners[i] != timeWinners[previous]) {
+                found[count++] = boundaries[i];
+            }
+        }
+        this.transitions = Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Assigns each segment to the first rule covering it.
+     *
+     * The rules are visited by priority and each one only visits the segments still without a
+     * winner, skipped with the next free segment, so every segment is assigned once.
+     *
+     * @param boundaries The start of each segment.
+     * @param timeList   The time rules, ordered by priority.
+     * @return           The result of the winner of each segment, null if none is active.
+     */
+    private static Resolution[] findTimeWinners(int[] boundaries, List<Rule> timeList) {
+        int count = boundaries.length;
+        Resolution[] winners = new Resolution[count];
+
+        // First segment without a winner at or after each segment, count if there is none
+        int[] nextFree = new int[count + 1];
+        for (int i = 0; i <= count; i++) {
+            nextFree[i] = i;
+        }
+
+        for (Rule rule : timeList) {
+            TimeWindow window = rule.getWindow();
+            int first = Arrays.binarySearch(boundaries, window.getStart());
+            int last = Arrays.binarySearch(boundaries, window.getEnd());
+            Resolution resolution = new Resolution(rule, Resolution.Reason.TIME);
+
+            if (first == last) {
+                // The window covers the whole day
+                assign(winners, nextFree, 0, count, resolution);
+            } else if (first < last) {
+                assign(winners, nextFree, first, last, resolution);
+            } else {
+                // The window wraps around midnight
+                assign(winners, nextFree, first, count, resolution);
+                assign(winners, nextFree, 0, last, resolution);
+            }
+        }
+
+        return winners;
+    }
+
+    /**
+     * Gives the segments from first, inclusive, to last, exclusive, without a winner to the
+     * specified one.
+     */
+    private static void assign(Resolution[] winners, int[] nextFree, int first, int last,
+                               Resolution resolution) {
+        for (int i = findFree(nextFree, first); i < last; i = findFree(nextFree, i)) {
+            winners[i] = resolution;
+            nextFree[i] = i + 1;
+        }
+    }
+
+    private static int findFree(int[] nextFree, int segment) {
+        int free = segment;
+        while (nextFree[free] != free) {
+            free = nextFree[free];
+        }
+
+        // Shortens the path for the next searches
+        while (nextFree[segment] != free) {
+            int next = nextFree[segment];
+            nextFree[segment] = free;
+            segment = next;
+        }
+
+        return free;
+    }
+
+    /**
+     * @return The rules used to build the index, ordered by priority.
+     */
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    /**
+     * @param ssid Name of the current network.
+     * @return     The highest priority Wi-Fi rule for this network, or null if there is none.
+     */
+    public Rule getWifiWinner(String ssid) {
+        Resolution resolution = wifiWinners.get(ssid);
+        return resolution == null ? null : resolution.getRule();
+    }
+
+    /**
+     * Finds the segment of the day with a binary search, without allocating.
+     *
+     * @param minuteOfDay Minutes since midnight.
+     * @return            The highest priority time rule active at this minute, or null if
+     *                    there is none.
+     */
+    public Rule getTimeWinner(int minuteOfDay) {
+        Resolution resolution = timeWinners[getSegment(minuteOfDay)];
+        return resolution == null ? null : resolution.getRule();
+    }
+
+    /**
+     * Finds the next time the winner among the time rules changes.
+     *
+     * @param minuteOfDay Current time in minutes since midnight.
+     * @return            The minute of the next transition, strictly after the current one and
+     *                    wrapping to the next day, or -1 if the time rules never change.
+     */
+    public int getNextTransition(int minuteOfDay) {
+        if (transitions.length == 0) {
+            return -1;
+        }
+
+        int index = Arrays.binarySearch(transitions, minuteOfDay);
+        index = index < 0 ? -index - 1 : index + 1;
+
+        return index < transitions.length ? transitions[index] : transitions[0];
+    }
+
+    /**
+     * @return The minutes of the day where the winner among the time rules changes, sorted.
+     */
+    public int[] getTransitions() {
+        return transitions.clone();
+    }
+
+    /**
+     * Resolves the wallpaper that must be displayed for the specified conditions.
+     *
+     * Only the winner of each mode is looked at, the one with the lowest position wins. The
+     * results are the ones created with the index, nothing is allocated.
+     *
+     * @param ssid        Name of the current network, or null if there is no connection.
+     * @param minuteOfDay Current time in minutes since midnight.
+     * @return            The winning rule and the reason why it won.
+     */
+    public Resolution resolve(String ssid, int minuteOfDay) {
+        Resolution wifiWinner = ssid == null ? null : wifiWinners.get(ssid);
+        Resolution timeWinner = timeWinners[getSegment(minuteOfDay)];
+
+        if (wifiWinner != null && (timeWinner == null
+                || wifiWinner.getRule().getPosition() < timeWinner.getRule().getPosition())) {
+            return wifiWinner;
+        } else if (timeWinner != null) {
+            return timeWinner;
+        } else {
+            return Resolution.DEFAULT;
+        }
+    }
+
+    private int getSegment(int minuteOfDay) {
+        int index = Arrays.binarySearch(boundaries, minuteOfDay);
+        return index < 0 ? -index - 2 : index;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.engine;
+
+import java.util.TimeZone;
+
+/**
+ * Daily time window of a time mode wallpaper, kept as minutes since midnight.
+ *
+ * The start is inclusive and the end is exclusive. A window whose end is before its start
+ * wraps around midnight, and a window whose start and end are the same covers the whole day.
+ *
+ * @author Ricardo Barbedo
+ */
+public class TimeWindow {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+
+    private final int start;
+    private final int end;
+
+    /**
+     * Constructor.
+     *
+     * @param start Start of the window in minutes since midnight.
+     * @param end   End of the window in minutes since midnight.
+     */
+    public TimeWindow(int start, int end) {
+        if (start < 0 || start >= MINUTES_PER_DAY || end < 0 || end >= MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Invalid window: " + start + " " + end);
+        }
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Parses the information field of a time mode wallpaper.
+     *
+     * @param info String with the format "HH:mm HH:mm".
+     * @return     The corresponding window.
+     * @throws IllegalArgumentException If the string is not in the expected format.
+     */
+    public static TimeWindow parse(String info) {
+        if (info == null || info.length() < 11) {
+            throw new IllegalArgumentException("Invalid window: " + info);
+        }
+        return new TimeWindow(parseMinutes(info, 0), parseMinutes(info, 6));
+    }
+
+    /**
+     * @return Start of the window in minutes since midnight.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return End of the window in minutes since midnight.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @param minuteOfDay Minutes since midnight.
+     * @return            True if the minute is in the window, false otherwise.
+     */
+    public boolean contains(int minuteOfDay) {
+        int length = (end - start + MINUTES_PER_DAY) % MINUTES_PER_DAY;
+        if (length == 0) {
+            return true;
+        }
+        return (minuteOfDay - start + MINUTES_PER_DAY) % MINUTES_PER_DAY < length;
+    }
+
+    /**
+     * Converts a timestamp to the minutes since midnight without allocating a Calendar.
+     *
+     * @param millis Milliseconds since the epoch.
+     * @param zone   Time zone of the device.
+     * @return       Minutes since the local midnight.
+     */
+    public static int minuteOfDay(long millis, TimeZone zone) {
+        long localMinutes = (millis + zone.getOffset(millis)) / MILLIS_PER_MINUTE;
+        return (int) (((localMinutes % MINUTES_PER_DAY) + MINUTES_PER_DAY) % MINUTES_PER_DAY);
+    }
+
+    /**
+     * Parses the "HH:mm" digits starting at the specified offset, without creating substrings.
+     */
+    private static int parseMinutes(String info, int offset) {
+        int hour = digit(info, offset) * 10 + digit(info, offset + 1);
+        int minute = digit(info, offset + 3) * 10 + digit(info, offset + 4);
+
+        if (info.charAt(offset + 2) != ':' || hour > 23 || minute > 59) {
+            throw new IllegalArgumentException("Invalid time: " + info);
+        }
+
+        return hour * 60 + minute;
+    }
+
+    private static int digit(String info, int index) {
+        int value = info.charAt(index) - '0';
+        if (value < 0 || value > 9) {
+            throw new IllegalArgumentException("Invalid time: " + info);
+        }
+        return value;
+    }
+
+    public String toString() {
+        return String.format("%02d:%02d %02d:%02d", start / 60, start % 60, end / 60, end % 60);
+    }
+}
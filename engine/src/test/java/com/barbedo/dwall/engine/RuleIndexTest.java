@@ -0,0 +1,194 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of the rule index: priority resolution, wraparound and transitions, and a comparison
+ * with a scan of every rule on random rule sets.
+ *
+ * @author Ricardo Barbedo
+ */
+public class RuleIndexTest {
+
+    private static Rule time(int position, String info) {
+        return Rule.time(position, TimeWindow.parse(info), "time" + position, null);
+    }
+
+    private static Rule wifi(int position, String ssid) {
+        return Rule.wifi(position, ssid, "wifi" + position, null);
+    }
+
+    @Test
+    public void emptyIndexResolvesDefault() {
+        assertSame(Resolution.DEFAULT, RuleIndex.EMPTY.resolve("home", 0));
+        assertEquals(-1, RuleIndex.EMPTY.getNextTransition(0));
+    }
+
+    @Test
+    public void lowestPositionWins() {
+        Rule work = wifi(0, "work");
+        Rule morning = time(1, "08:00 12:00");
+        Rule home = wifi(2, "home");
+        RuleIndex index = new RuleIndex(Arrays.asList(home, morning, work));
+
+        assertSame(work, index.resolve("work", 9 * 60).getRule());
+        assertEquals(Resolution.Reason.WIFI, index.resolve("work", 9 * 60).getReason());
+        assertSame(morning, index.resolve("home", 9 * 60).getRule());
+        assertEquals(Resolution.Reason.TIME, index.resolve("home", 9 * 60).getReason());
+        assertSame(home, index.resolve("home", 13 * 60).getRule());
+        assertSame(Resolution.DEFAULT, index.resolve(null, 13 * 60));
+        assertSame(Resolution.DEFAULT, index.resolve("other", 13 * 60));
+    }
+
+    @Test
+    public void firstRuleOfNetworkWins() {
+        Rule first = wifi(3, "home");
+        Rule second = wifi(5, "home");
+        RuleIndex index = new RuleIndex(Arrays.asList(second, first));
+
+        assertSame(first, index.getWifiWinner("home"));
+        assertNull(index.getWifiWinner("work"));
+    }
+
+    @Test
+    public void overlappingTimeRulesResolveByPosition() {
+        Rule day = time(2, "06:00 20:00");
+        Rule lunch = time(1, "12:00 14:00");
+        RuleIndex index = new RuleIndex(Arrays.asList(day, lunch));
+
+        assertSame(day, index.getTimeWinner(11 * 60));
+        assertSame(lunch, index.getTimeWinner(12 * 60));
+        assertSame(day, index.getTimeWinner(14 * 60));
+        assertNull(index.getTimeWinner(20 * 60));
+    }
+
+    @Test
+    public void resolveDoesNotAllocate() {
+        RuleIndex index = new RuleIndex(Arrays.asList(wifi(0, "home"), time(1, "08:00 12:00")));
+
+        assertSame(index.resolve("home", 0), index.resolve("home", 0));
+        assertSame(index.resolve(null, 9 * 60), index.resolve(null, 9 * 60));
+    }
+
+    @Test
+    public void wrappingRuleCoversMidnight() {
+        Rule night = time(0, "22:00 06:00");
+        RuleIndex index = new RuleIndex(Collections.singletonList(night));
+
+        assertSame(night, index.getTimeWinner(23 * 60));
+        assertSame(night, index.getTimeWinner(0));
+        assertSame(night, index.getTimeWinner(6 * 60 - 1));
+        assertNull(index.getTimeWinner(6 * 60));
+        assertArrayEquals(new int[] {6 * 60, 22 * 60}, index.getTransitions());
+    }
+
+    @Test
+    public void wholeDayRuleHasNoTransition() {
+        Rule always = time(1, "10:00 10:00");
+        RuleIndex index = new RuleIndex(Collections.singletonList(always));
+
+        assertSame(always, index.getTimeWinner(0));
+        assertSame(always, index.getTimeWinner(TimeWindow.MINUTES_PER_DAY - 1));
+        assertEquals(-1, index.getNextTransition(10 * 60));
+    }
+
+    @Test
+    public void maskedBoundariesAreNotTransitions() {
+        Rule day = time(0, "06:00 20:00");
+        Rule lunch = time(1, "12:00 14:00");
+        RuleIndex index = new RuleIndex(Arrays.asList(day, lunch));
+
+        assertArrayEquals(new int[] {6 * 60, 20 * 60}, index.getTransitions());
+    }
+
+    @Test
+    public void nextTransitionWrapsToNextDay() {
+        RuleIndex index = new RuleIndex(Arrays.asList(time(0, "08:00 12:00"),
+                time(1, "18:00 20:00")));
+
+        assertEquals(8 * 60, index.getNextTransition(0));
+        assertEquals(12 * 60, index.getNextTransition(8 * 60));
+        assertEquals(18 * 60, index.getNextTransition(13 * 60));
+        assertEquals(8 * 60, index.getNextTransition(20 * 60));
+        assertEquals(8 * 60, index.getNextTransition(23 * 60));
+    }
+
+    @Test
+    public void indexMatchesScanOfEveryRule() {
+        Random random = new Random(42);
+
+        for (int set = 0; set < 200; set++) {
+            List<Rule> rules = new ArrayList<Rule>();
+            int count = random.nextInt(10);
+            for (int position = 0; position < count; position++) {
+                if (random.nextBoolean()) {
+                    rules.add(wifi(position, "ssid" + random.nextInt(3)));
+                } else {
+                    rules.add(Rule.time(position,
+                            new TimeWindow(random.nextInt(TimeWindow.MINUTES_PER_DAY),
+                                    random.nextInt(TimeWindow.MINUTES_PER_DAY)),
+                            "time" + position, null));
+                }
+            }
+            Collections.shuffle(rules, random);
+            RuleIndex index = new RuleIndex(rules);
+
+            for (int minute = 0; minute < TimeWindow.MINUTES_PER_DAY; minute++) {
+                String ssid = "ssid" + random.nextInt(4);
+                Rule expected = scan(rules, ssid, minute);
+                Resolution resolution = index.resolve(ssid, minute);
+
+                if (expected == null) {
+                    assertSame(Resolution.DEFAULT, resolution);
+                } else {
+                    assertSame(expected, resolution.getRule());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The active rule with the lowest position, or null if none is active.
+     */
+    private static Rule scan(List<Rule> rules, String ssid, int minute) {
+        Rule best = null;
+
+        for (Rule rule : rules) {
+            boolean active = rule.getMode() == Rule.MODE_WIFI
+                    ? rule.getSsid().equals(ssid)
+                    : rule.getWindow().contains(minute);
+            if (active && (best == null || rule.getPosition() < best.getPosition())) {
+                best = rule;
+            }
+        }
+
+        return best;
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2016 Ricardo Barbedo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.barbedo.dwall.engine;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the time windows: bounds, wraparound past midnight and parsing.
+ *
+ * @author Ricardo Barbedo
+ */
+public class TimeWindowTest {
+
+    @Test
+    public void startIsInclusiveAndEndExclusive() {
+        TimeWindow window = new TimeWindow(8 * 60, 12 * 60);
+
+        assertFalse(window.contains(8 * 60 - 1));
+        assertTrue(window.contains(8 * 60));
+        assertTrue(window.contains(12 * 60 - 1));
+        assertFalse(window.contains(12 * 60));
+    }
+
+    @Test
+    public void windowWrapsAroundMidnight() {
+        TimeWindow window = new TimeWindow(22 * 60, 6 * 60);
+
+        assertTrue(window.contains(22 * 60));
+        assertTrue(window.contains(TimeWindow.MINUTES_PER_DAY - 1));
+        assertTrue(window.contains(0));
+        assertTrue(window.contains(6 * 60 - 1));
+        assertFalse(window.contains(6 * 60));
+        assertFalse(window.contains(12 * 60));
+        assertFalse(window.contains(22 * 60 - 1));
+    }
+
+    @Test
+    public void sameStartAndEndCoversWholeDay() {
+        TimeWindow window = new TimeWindow(10 * 60, 10 * 60);
+
+        for (int minute = 0; minute < TimeWindow.MINUTES_PER_DAY; minute++) {
+            assertTrue(window.contains(minute));
+        }
+    }
+
+    @Test
+    public void parseReadsStartAndEnd() {
+        TimeWindow window = TimeWindow.parse("07:30 23:05");
+
+        assertEquals(7 * 60 + 30, window.getStart());
+        assertEquals(23 * 60 + 5, window.getEnd());
+        assertEquals("07:30 23:05", window.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsNull() {
+        TimeWindow.parse(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsShortString() {
+        TimeWindow.parse("7:30 23:05");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsInvalidHour() {
+        TimeWindow.parse("24:00 08:00");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsInvalidSeparator() {
+        TimeWindow.parse("07-30 08:00");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsMinuteOutOfDay() {
+        new TimeWindow(0, TimeWindow.MINUTES_PER_DAY);
+    }
+
+    @Test
+    public void minuteOfDayUsesTimeZone() {
+        long millis = 90 * 60 * 1000L;
+
+        assertEquals(90, TimeWindow.minuteOfDay(millis, TimeZone.getTimeZone("UTC")));
+        assertEquals(150, TimeWindow.minuteOfDay(millis, TimeZone.getTimeZone("GMT+01:00")));
+        assertEquals(TimeWindow.MINUTES_PER_DAY - 30,
+                TimeWindow.minuteOfDay(millis, TimeZone.getTimeZone("GMT-02:00")));
+    }
+}